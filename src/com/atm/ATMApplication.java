@@ -1,9 +1,16 @@
 package com.atm;
 
 import com.atm.gui.ATMMainFrame;
+import com.atm.persistence.CacheLoader;
+import com.atm.persistence.Journal;
+import com.atm.persistence.PersistenceConfig;
+import com.atm.persistence.SnapshotManager;
+import com.atm.persistence.TransactionLog;
+import com.atm.utils.DataCache;
 import com.atm.utils.SampleDataInitializer;
 
 import javax.swing.*;
+import java.io.IOException;
 
 /**
  * Main application class for the MyBanker ATM System
@@ -22,8 +29,8 @@ public class ATMApplication {
         // Initialize sample data
         SwingUtilities.invokeLater(() -> {
             try {
-                // Initialize sample data for testing
-                SampleDataInitializer.initializeSampleData();
+                // Restore persisted data, seeding sample data on first run
+                initializeData();
                 
                 // Create and show the main ATM frame
                 ATMMainFrame mainFrame = new ATMMainFrame();
@@ -43,6 +50,53 @@ public class ATMApplication {
         });
     }
     
+    /**
+     * Restores DataCache from the transaction log, the latest snapshot and the journal tail
+     * written after it, then attaches the journal for future writes and schedules background snapshots.
+     * See PersistenceConfig.fromSystemProperties for the available settings.
+     */
+    private static void initializeData() throws IOException {
+        DataCache cache = DataCache.getInstance();
+        PersistenceConfig config = PersistenceConfig.fromSystemProperties();
+        CacheLoader loader = new CacheLoader(cache);
+        
+        // Attached first so that restored accounts link to their logged history
+        TransactionLog transactionLog = null;
+        if (config.isTransactionLogEnabled()) {
+            transactionLog = TransactionLog.open(config.getTransactionLogPath(), config.getTransactionLogSegmentBytes());
+            cache.attachTransactionLog(transactionLog);
+        }
+        
+        SnapshotManager snapshots = new SnapshotManager(config.getSnapshotPath(), cache);
+        Journal journal = Journal.open(config);
+        long replayFrom = snapshots.restore(loader, journal);
+        int replayed = journal.replay(replayFrom, loader);
+        cache.attachJournal(journal);
+        snapshots.start(journal, config.getSnapshotIntervalSeconds());
+        
+        TransactionLog openLog = transactionLog;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                snapshots.stop();
+                snapshots.writeSnapshot(journal);
+                journal.close();
+                if (openLog != null) {
+                    openLog.close();
+                }
+                System.out.println(journal.getMetrics());
+            } catch (IOException e) {
+                System.err.println("Could not close journal: " + e.getMessage());
+            }
+        }, "journal-shutdown"));
+        
+        if (loader.getApplied() == 0 && (transactionLog == null || transactionLog.size() == 0)) {
+            // First run - seed sample data, which is journaled like any other write
+            SampleDataInitializer.initializeSampleData();
+        } else {
+            System.out.println("Replayed " + replayed + " journal records from " + journal.getPath());
+        }
+    }
+    
     /**
      * Shows a welcome message with test credentials
      */
@@ -2,7 +2,7 @@ package com.atm.gui;
 
 import com.atm.models.Account;
 import com.atm.models.Card;
-import com.atm.services.ATMService;
+import com.atm.services.AsyncATMService;
 import com.atm.services.AuthenticationService;
 
 import javax.swing.*;
@@ -28,6 +28,8 @@ public class AccountCreationScreen extends JPanel {
     private JLabel statusLabel;
     private JButton createAccountButton;
     private JButton backButton;
+    private final AsyncATMService atmService = AsyncATMService.getInstance();
+    private final ServiceTaskRunner tasks = new ServiceTaskRunner(this);
     
     public AccountCreationScreen(ATMMainFrame parentFrame, String sessionId) {
         this.parentFrame = parentFrame;
@@ -221,6 +223,10 @@ public class AccountCreationScreen extends JPanel {
         gbc.insets = new Insets(15, 0, 25, 0);
         formContent.add(buttonPanel, gbc);
         
+        gbc.gridy = row++;
+        gbc.insets = new Insets(0, 0, 15, 0);
+        formContent.add(tasks.getProgressBar(), gbc);
+        
         formPanel.add(titlePanel, BorderLayout.NORTH);
         formPanel.add(formContent, BorderLayout.CENTER);
         
@@ -428,6 +434,7 @@ public class AccountCreationScreen extends JPanel {
     
     private void setupEventListeners() {
         createAccountButton.addActionListener(e -> createAccount());
+        tasks.disableWhileExclusive(createAccountButton);
         backButton.addActionListener(e -> goBack());
         
         // Account type selection listener
@@ -496,40 +503,33 @@ public class AccountCreationScreen extends JPanel {
             return;
         }
         
-        // Disable button during creation
-        createAccountButton.setEnabled(false);
-        createAccountButton.setText("CREATING ACCOUNT...");
-        
-        SwingUtilities.invokeLater(() -> {
-            try {
-                // Get form data
-                String firstName = firstNameField.getText().trim();
-                String lastName = lastNameField.getText().trim();
-                String phone = phoneField.getText().replaceAll("-", "");
-                String email = emailField.getText().trim();
-                String pin = new String(pinField.getPassword());
-                AccountTypeOption selectedType = (AccountTypeOption) accountTypeCombo.getSelectedItem();
-                BigDecimal initialDeposit = new BigDecimal(initialDepositField.getText().trim());
-                
-                // Create account
-                ATMService atmService = ATMService.getInstance();
-                ATMService.AccountCreationResult result = atmService.createAccount(
-                    currentSessionId, firstName, lastName, phone, email, 
-                    selectedType.accountType, initialDeposit, pin);
-                
+        // Get form data
+        String firstName = firstNameField.getText().trim();
+        String lastName = lastNameField.getText().trim();
+        String phone = phoneField.getText().replaceAll("-", "");
+        String email = emailField.getText().trim();
+        String pin = new String(pinField.getPassword());
+        AccountTypeOption selectedType = (AccountTypeOption) accountTypeCombo.getSelectedItem();
+        BigDecimal initialDeposit;
+        try {
+            initialDeposit = new BigDecimal(initialDepositField.getText().trim());
+        } catch (NumberFormatException ex) {
+            setStatusMessage("❌ Error: " + ex.getMessage(), false);
+            return;
+        }
+        
+        // Hashing the PIN and journaling the new records is slow, so the account is created off
+        // the EDT with the create button disabled
+        tasks.runExclusive("Creating account...", "Account Creation Failed",
+            () -> atmService.createAccount(currentSessionId, firstName, lastName, phone, email,
+                selectedType.accountType, initialDeposit, pin),
+            result -> {
                 if (result.isSuccess()) {
                     showSuccessDialog(result.getAccount(), result.getCard());
                 } else {
                     setStatusMessage("❌ " + result.getMessage(), false);
                 }
-                
-            } catch (Exception ex) {
-                setStatusMessage("❌ Error: " + ex.getMessage(), false);
-            } finally {
-                createAccountButton.setEnabled(true);
-                createAccountButton.setText("🏦 CREATE ACCOUNT");
-            }
-        });
+            });
     }
     
     private boolean validateForm() {
@@ -1,6 +1,6 @@
 package com.atm.gui;
 
-import com.atm.services.AuthenticationService;
+import com.atm.services.AsyncATMService;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -17,6 +17,8 @@ public class LoginScreen extends JPanel {
     private JButton createAccountButton;
     private JLabel statusLabel;
     private ATMMainFrame parentFrame;
+    private final AsyncATMService atmService = AsyncATMService.getInstance();
+    private final ServiceTaskRunner tasks = new ServiceTaskRunner(this);
     
     public LoginScreen(ATMMainFrame parentFrame) {
         this.parentFrame = parentFrame;
@@ -178,6 +180,10 @@ public class LoginScreen extends JPanel {
         cardGbc.insets = new Insets(10, 10, 10, 10);
         loginCard.add(buttonPanel, cardGbc);
         
+        cardGbc.gridy = 8;
+        cardGbc.insets = new Insets(0, 10, 10, 10);
+        loginCard.add(tasks.getProgressBar(), cardGbc);
+        
         // Add login card to main panel
         gbc.gridx = 0;
         gbc.gridy = 0;
@@ -390,6 +396,7 @@ public class LoginScreen extends JPanel {
                 performLogin();
             }
         });
+        tasks.disableWhileExclusive(loginButton);
         
         // Clear button action
         clearButton.addActionListener(new ActionListener() {
@@ -444,16 +451,10 @@ public class LoginScreen extends JPanel {
             return;
         }
         
-        // Disable login button during authentication
-        loginButton.setEnabled(false);
-        loginButton.setText("AUTHENTICATING...");
-        
-        // Perform authentication in a separate thread to avoid blocking UI
-        SwingUtilities.invokeLater(() -> {
-            try {
-                AuthenticationService authService = AuthenticationService.getInstance();
-                AuthenticationService.AuthenticationResult result = authService.authenticate(cardNumber, pin);
-                
+        // PIN hashing is slow, so authentication runs off the EDT with the login button disabled
+        tasks.runExclusive("Authenticating...", "Login Failed",
+            () -> atmService.authenticate(cardNumber, pin),
+            result -> {
                 if (result.isSuccess()) {
                     setStatusMessage("Login successful!", true);
                     // Switch to main ATM interface
@@ -462,13 +463,7 @@ public class LoginScreen extends JPanel {
                     setStatusMessage(result.getMessage(), false);
                     pinField.setText("");
                 }
-            } catch (Exception ex) {
-                setStatusMessage("System error. Please try again.", false);
-            } finally {
-                loginButton.setEnabled(true);
-                loginButton.setText("LOGIN");
-            }
-        });
+            });
     }
     
     private void clearFields() {
@@ -1,15 +1,17 @@
 package com.atm.gui;
 
+import com.atm.services.AccountReadModel;
+import com.atm.services.AsyncATMService;
 import com.atm.services.AuthenticationService;
 import com.atm.services.ATMService;
 import com.atm.models.Transaction;
+import com.atm.utils.IdGenerator;
 import com.atm.utils.ReceiptGenerator;
 
 import javax.swing.*;
 import java.awt.*;
 import java.math.BigDecimal;
 import java.text.NumberFormat;
-import java.time.format.DateTimeFormatter;
 
 /**
  * Main ATM interface screen
@@ -29,8 +31,14 @@ public class MainATMScreen extends JPanel {
     private JPanel historyPanel;
     private JPanel changePinPanel;
     
+    private JButton quickBalanceButton;
+    
     private final NumberFormat currencyFormat = NumberFormat.getCurrencyInstance();
     
+    // Service calls run in the background so the screen stays responsive
+    private final AsyncATMService atmService = AsyncATMService.getInstance();
+    private final ServiceTaskRunner tasks = new ServiceTaskRunner(this);
+    
     public MainATMScreen(ATMMainFrame parentFrame, AuthenticationService.AuthenticatedUser authenticatedUser) {
         this.parentFrame = parentFrame;
         this.authenticatedUser = authenticatedUser;
@@ -122,7 +130,7 @@ public class MainATMScreen extends JPanel {
         centerPanel.add(dateLabel);
         
         // Right side - Session info and logout
-        JPanel rightPanel = new JPanel(new GridLayout(2, 1));
+        JPanel rightPanel = new JPanel(new GridLayout(3, 1, 0, 4));
         rightPanel.setBackground(UIComponents.PRIMARY_COLOR);
         rightPanel.setBorder(BorderFactory.createEmptyBorder(15, 30, 15, 30));
         
@@ -135,6 +143,7 @@ public class MainATMScreen extends JPanel {
         logoutButton.addActionListener(e -> logout());
         
         rightPanel.add(sessionLabel);
+        rightPanel.add(tasks.getProgressBar());
         rightPanel.add(logoutButton);
         
         headerPanel.add(leftPanel, BorderLayout.WEST);
@@ -275,9 +284,10 @@ public class MainATMScreen extends JPanel {
         
         JLabel quickLabel = UIComponents.createSecondaryLabel("Quick Access:");
         
-        JButton quickBalance = UIComponents.createSecondaryButton("💰 $" + getCurrentBalance());
-        quickBalance.addActionListener(e -> showBalance());
-        quickBalance.setToolTipText("Click for detailed balance");
+        // Text is filled in by loadBalance
+        quickBalanceButton = UIComponents.createSecondaryButton("💰 ...");
+        quickBalanceButton.addActionListener(e -> showBalance());
+        quickBalanceButton.setToolTipText("Click for detailed balance");
         
         JButton helpButton = UIComponents.createSecondaryButton("❓ Help");
         helpButton.addActionListener(e -> showHelp());
@@ -285,7 +295,7 @@ public class MainATMScreen extends JPanel {
         
         quickPanel.add(quickLabel);
         quickPanel.add(Box.createHorizontalStrut(15));
-        quickPanel.add(quickBalance);
+        quickPanel.add(quickBalanceButton);
         quickPanel.add(Box.createHorizontalStrut(10));
         quickPanel.add(helpButton);
         
@@ -359,6 +369,7 @@ public class MainATMScreen extends JPanel {
             final String amount = amounts[i]; // Make effectively final
             JButton amountButton = createWithdrawalButton(amount, descriptions[i]);
             amountButton.addActionListener(e -> handleQuickWithdrawal(amount));
+            tasks.disableWhileExclusive(amountButton);
             quickAmountPanel.add(amountButton);
         }
         
@@ -390,6 +401,8 @@ public class MainATMScreen extends JPanel {
             }
         });
         
+        tasks.disableWhileExclusive(withdrawCustomButton);
+        
         JPanel customInputPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         customInputPanel.setBackground(Color.WHITE);
         customInputPanel.add(customAmountField);
@@ -537,6 +550,8 @@ public class MainATMScreen extends JPanel {
             }
         });
         
+        tasks.disableWhileExclusive(transferButton);
+        
         JButton backButton = UIComponents.createSecondaryButton("BACK");
         backButton.addActionListener(e -> showMenuPanel());
         
@@ -684,11 +699,15 @@ public class MainATMScreen extends JPanel {
     
     // Business logic methods
     private void loadBalance() {
-        ATMService atmService = ATMService.getInstance();
-        ATMService.BalanceResult result = atmService.getBalance(authenticatedUser.getSessionId());
-        
+        tasks.run("Loading balance...", "Balance Unavailable",
+            () -> atmService.getBalance(authenticatedUser.getSessionId()),
+            this::showBalanceResult);
+    }
+    
+    private void showBalanceResult(ATMService.BalanceResult result) {
         if (result.isSuccess()) {
             balanceLabel.setText("Balance: " + currencyFormat.format(result.getBalance()));
+            quickBalanceButton.setText("💰 $" + currencyFormat.format(result.getBalance()).replace("$", ""));
         } else {
             balanceLabel.setText("Balance: Error loading");
         }
@@ -799,10 +818,15 @@ public class MainATMScreen extends JPanel {
         return options;
     }
     
+    // One key per confirmed withdrawal, so a resubmission is answered without debiting twice
     private void performWithdrawal(BigDecimal amount) {
-        ATMService atmService = ATMService.getInstance();
-        ATMService.TransactionResult result = atmService.withdraw(authenticatedUser.getSessionId(), amount);
-        
+        String requestKey = IdGenerator.nextIdString();
+        tasks.runExclusive("Dispensing cash...", "Withdrawal Failed",
+            () -> atmService.withdraw(authenticatedUser.getSessionId(), amount, requestKey),
+            result -> showWithdrawalResult(amount, result));
+    }
+    
+    private void showWithdrawalResult(BigDecimal amount, ATMService.TransactionResult result) {
         if (result.isSuccess()) {
             String message = "Amount withdrawn: " + currencyFormat.format(amount) + 
                            "\nTransaction ID: " + result.getTransaction().getReferenceNumber();
@@ -815,7 +839,9 @@ public class MainATMScreen extends JPanel {
                 ReceiptGenerator.showTransactionReceipt(this, result.getTransaction(), authenticatedUser);
             }
             
-            loadBalance();
+            showMenuPanel(); // reloads the balance
+        } else if (result.isOutcomeUnknown()) {
+            UIComponents.showErrorMessage(this, "Withdrawal Not Confirmed", result.getMessage());
             showMenuPanel();
         } else {
             UIComponents.showErrorMessage(this, "Withdrawal Failed", result.getMessage());
@@ -827,55 +853,75 @@ public class MainATMScreen extends JPanel {
             "Transfer " + currencyFormat.format(amount) + " to account " + destinationAccount + "?");
         
         if (confirm == JOptionPane.YES_OPTION) {
-            ATMService atmService = ATMService.getInstance();
-            ATMService.TransactionResult result = atmService.transfer(
-                authenticatedUser.getSessionId(), destinationAccount, amount);
+            String requestKey = IdGenerator.nextIdString();
+            tasks.runExclusive("Transferring funds...", "Transfer Failed",
+                () -> atmService.transfer(authenticatedUser.getSessionId(), destinationAccount, amount, requestKey),
+                result -> showTransferResult(destinationAccount, amount, result));
+        }
+    }
+    
+    private void showTransferResult(String destinationAccount, BigDecimal amount,
+                                    ATMService.TransactionResult result) {
+        if (result.isSuccess()) {
+            String message = "Amount transferred: " + currencyFormat.format(amount) + 
+                           "\nTo: " + destinationAccount +
+                           "\nTransaction ID: " + result.getTransaction().getReferenceNumber();
+            UIComponents.showSuccessMessage(this, "Transfer Successful", message);
             
-            if (result.isSuccess()) {
-                String message = "Amount transferred: " + currencyFormat.format(amount) + 
-                               "\nTo: " + destinationAccount +
-                               "\nTransaction ID: " + result.getTransaction().getReferenceNumber();
-                UIComponents.showSuccessMessage(this, "Transfer Successful", message);
+            // Ask if user wants a receipt
+            int receiptChoice = UIComponents.showConfirmationDialog(this, "Receipt", 
+                "Would you like to print a receipt?");
+            if (receiptChoice == JOptionPane.YES_OPTION) {
+                ReceiptGenerator.showTransactionReceipt(this, result.getTransaction(), authenticatedUser);
+            }
+            
+            showMenuPanel(); // reloads the balance
+        } else if (result.isOutcomeUnknown()) {
+            UIComponents.showErrorMessage(this, "Transfer Not Confirmed", result.getMessage());
+            showMenuPanel();
+        } else {
+            UIComponents.showErrorMessage(this, "Transfer Failed", result.getMessage());
+        }
+    }
+    
+    private void showBalance() {
+        // One inquiry serves the dialog and the receipt, and is the only balance read that is recorded
+        tasks.run("Loading balance...", "Balance Unavailable",
+            () -> atmService.inquireBalance(authenticatedUser.getSessionId()),
+            result -> {
+                showBalanceResult(result);
+                if (!result.isSuccess()) {
+                    UIComponents.showErrorMessage(this, "Balance Unavailable", result.getMessage());
+                    return;
+                }
+                UIComponents.showSuccessMessage(this, "Account Balance", 
+                    "Your current balance is: " + currencyFormat.format(result.getBalance()));
                 
                 // Ask if user wants a receipt
                 int receiptChoice = UIComponents.showConfirmationDialog(this, "Receipt", 
                     "Would you like to print a receipt?");
                 if (receiptChoice == JOptionPane.YES_OPTION) {
-                    ReceiptGenerator.showTransactionReceipt(this, result.getTransaction(), authenticatedUser);
+                    ReceiptGenerator.showBalanceReceipt(this, result.getBalance(), authenticatedUser);
                 }
-                
-                loadBalance();
-                showMenuPanel();
-            } else {
-                UIComponents.showErrorMessage(this, "Transfer Failed", result.getMessage());
-            }
-        }
-    }
-    
-    private void showBalance() {
-        loadBalance();
-        String balanceText = balanceLabel.getText().substring(9); // Remove "Balance: " prefix
-        UIComponents.showSuccessMessage(this, "Account Balance", 
-            "Your current balance is: " + balanceText);
-        
-        // Ask if user wants a receipt
-        int receiptChoice = UIComponents.showConfirmationDialog(this, "Receipt", 
-            "Would you like to print a receipt?");
-        if (receiptChoice == JOptionPane.YES_OPTION) {
-            ATMService atmService = ATMService.getInstance();
-            ATMService.BalanceResult result = atmService.getBalance(authenticatedUser.getSessionId());
-            if (result.isSuccess()) {
-                ReceiptGenerator.showBalanceReceipt(this, result.getBalance(), authenticatedUser);
-            }
-        }
+            });
     }
     
     private void loadTransactionHistory() {
         historyPanel.removeAll();
+        JPanel loadingPanel = new JPanel(new GridBagLayout());
+        loadingPanel.setBackground(UIComponents.BACKGROUND_COLOR);
+        loadingPanel.add(UIComponents.createSecondaryLabel("Loading transactions..."));
+        historyPanel.add(loadingPanel, BorderLayout.CENTER);
+        historyPanel.revalidate();
+        historyPanel.repaint();
         
-        ATMService atmService = ATMService.getInstance();
-        ATMService.TransactionHistoryResult result = atmService.getTransactionHistory(
-            authenticatedUser.getSessionId(), 10);
+        tasks.run("Loading transactions...", "History Unavailable",
+            () -> atmService.getMiniStatement(authenticatedUser.getSessionId()),
+            this::showTransactionHistory);
+    }
+    
+    private void showTransactionHistory(ATMService.MiniStatementResult result) {
+        historyPanel.removeAll();
         
         JPanel headerPanel = new JPanel(new BorderLayout());
         headerPanel.setBackground(UIComponents.BACKGROUND_COLOR);
@@ -888,14 +934,13 @@ public class MainATMScreen extends JPanel {
         headerPanel.add(titleLabel, BorderLayout.WEST);
         headerPanel.add(backButton, BorderLayout.EAST);
         
-        if (result.isSuccess() && !result.getTransactions().isEmpty()) {
+        if (result.isSuccess() && !result.getStatement().getStatementLines().isEmpty()) {
             JPanel transactionListPanel = new JPanel();
             transactionListPanel.setLayout(new BoxLayout(transactionListPanel, BoxLayout.Y_AXIS));
             transactionListPanel.setBackground(UIComponents.BACKGROUND_COLOR);
             
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm");
-            
-            for (Transaction transaction : result.getTransactions()) {
+            // Lines come preformatted from the read model
+            for (AccountReadModel.StatementLine line : result.getStatement().getStatementLines()) {
                 JPanel transactionCard = UIComponents.createCard();
                 transactionCard.setLayout(new BorderLayout());
                 transactionCard.setMaximumSize(new Dimension(Integer.MAX_VALUE, 80));
@@ -903,19 +948,18 @@ public class MainATMScreen extends JPanel {
                 JPanel leftPanel = new JPanel(new GridLayout(2, 1));
                 leftPanel.setBackground(Color.WHITE);
                 
-                JLabel typeLabel = UIComponents.createBodyLabel(transaction.getType().toString());
-                JLabel dateLabel = UIComponents.createSecondaryLabel(transaction.getTimestamp().format(formatter));
+                JLabel typeLabel = UIComponents.createBodyLabel(line.getType().toString());
+                JLabel dateLabel = UIComponents.createSecondaryLabel(line.getDate());
                 
                 leftPanel.add(typeLabel);
                 leftPanel.add(dateLabel);
                 
-                JLabel amountLabel = UIComponents.createBodyLabel(currencyFormat.format(transaction.getAmount()));
-                if (transaction.getType() == Transaction.TransactionType.WITHDRAWAL) {
+                JLabel amountLabel = UIComponents.createBodyLabel(line.getAmount());
+                if (line.getType() == Transaction.TransactionType.WITHDRAWAL
+                        || line.getType() == Transaction.TransactionType.TRANSFER) {
                     amountLabel.setForeground(UIComponents.ERROR_COLOR);
-                    amountLabel.setText("-" + amountLabel.getText());
-                } else if (transaction.getType() == Transaction.TransactionType.DEPOSIT) {
+                } else if (line.getType() == Transaction.TransactionType.DEPOSIT) {
                     amountLabel.setForeground(UIComponents.SUCCESS_COLOR);
-                    amountLabel.setText("+" + amountLabel.getText());
                 }
                 
                 transactionCard.add(leftPanel, BorderLayout.WEST);
@@ -947,20 +991,22 @@ public class MainATMScreen extends JPanel {
     }
     
     private void performPinChange(String currentPin, String newPin) {
-        ATMService atmService = ATMService.getInstance();
-        ATMService.OperationResult result = atmService.changePin(
-            authenticatedUser.getSessionId(), currentPin, newPin);
-        
-        if (result.isSuccess()) {
-            UIComponents.showSuccessMessage(this, "PIN Changed", "Your PIN has been successfully changed");
-            showMenuPanel();
-        } else {
-            UIComponents.showErrorMessage(this, "PIN Change Failed", result.getMessage());
-        }
+        tasks.run("Changing PIN...", "PIN Change Failed",
+            () -> atmService.changePin(authenticatedUser.getSessionId(), currentPin, newPin),
+            result -> {
+                if (result.isSuccess()) {
+                    UIComponents.showSuccessMessage(this, "PIN Changed", "Your PIN has been successfully changed");
+                    showMenuPanel();
+                } else {
+                    UIComponents.showErrorMessage(this, "PIN Change Failed", result.getMessage());
+                }
+            });
     }
     
     private void logout() {
-        AuthenticationService.getInstance().logout(authenticatedUser.getSessionId());
+        // Results of calls still in flight belong to the ended session
+        tasks.cancel();
+        atmService.logout(authenticatedUser.getSessionId());
         parentFrame.showLoginScreen();
     }
     
@@ -972,15 +1018,6 @@ public class MainATMScreen extends JPanel {
         return java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("MMM dd, yyyy"));
     }
     
-    private String getCurrentBalance() {
-        ATMService atmService = ATMService.getInstance();
-        ATMService.BalanceResult result = atmService.getBalance(authenticatedUser.getSessionId());
-        if (result.isSuccess()) {
-            return currencyFormat.format(result.getBalance()).replace("$", "");
-        }
-        return "0.00";
-    }
-    
     private void showHelp() {
         String helpText = "🏧 MyBanker ATM Help\n\n" +
                          "Available Services:\n" +
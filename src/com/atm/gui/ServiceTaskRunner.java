@@ -0,0 +1,154 @@
+package com.atm.gui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs a screen's service calls off the Event Dispatch Thread.
+ *
+ * Calls are started from the EDT and return futures; while any is in flight the progress
+ * bar is shown. Results are handed back on the EDT. After cancel(), e.g. on logout,
+ * pending results are dropped and no new calls are started.
+ *
+ * Exclusive calls, such as ones that move money, run one at a time: while one is in flight
+ * the registered action controls are disabled and further exclusive calls are ignored.
+ */
+public class ServiceTaskRunner {
+    private final Component owner;
+    private final JProgressBar progressBar;
+    private final Set<CompletableFuture<?>> pending = new HashSet<>(); // touched only on the EDT
+    private final List<Component> exclusiveControls = new ArrayList<>();
+    private boolean exclusiveRunning;
+    private boolean cancelled;
+    
+    public ServiceTaskRunner(Component owner) {
+        this.owner = owner;
+        this.progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setFont(UIComponents.SMALL_FONT);
+        progressBar.setVisible(false);
+    }
+    
+    public JProgressBar getProgressBar() {
+        return progressBar;
+    }
+    
+    /**
+     * Registers controls that start exclusive calls; they are disabled while one is in flight
+     */
+    public void disableWhileExclusive(Component control) {
+        exclusiveControls.add(control);
+        control.setEnabled(!exclusiveRunning);
+    }
+    
+    public boolean isExclusiveRunning() {
+        return exclusiveRunning;
+    }
+    
+    /**
+     * Starts a call and passes its result to onResult on the EDT.
+     * Failures and timeouts are reported to the user under errorTitle.
+     */
+    public <T> void run(String progressText, String errorTitle, Supplier<CompletableFuture<T>> call,
+                        Consumer<T> onResult) {
+        start(progressText, errorTitle, call, onResult, false);
+    }
+    
+    /**
+     * Like run, but ignored while another exclusive call is in flight. Returns false if the
+     * call was not started.
+     */
+    public <T> boolean runExclusive(String progressText, String errorTitle, Supplier<CompletableFuture<T>> call,
+                                    Consumer<T> onResult) {
+        if (exclusiveRunning) {
+            return false;
+        }
+        return start(progressText, errorTitle, call, onResult, true);
+    }
+    
+    private <T> boolean start(String progressText, String errorTitle, Supplier<CompletableFuture<T>> call,
+                              Consumer<T> onResult, boolean exclusive) {
+        if (cancelled) {
+            return false;
+        }
+        CompletableFuture<T> future = call.get();
+        if (exclusive) {
+            setExclusiveRunning(true);
+        }
+        pending.add(future);
+        progressBar.setString(progressText);
+        progressBar.setVisible(true);
+        owner.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        
+        future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            // Removed by cancel() if the screen was left in the meantime
+            if (!pending.remove(future)) {
+                return;
+            }
+            if (pending.isEmpty()) {
+                idle();
+            }
+            // Controls stay disabled until the result has been shown to the user
+            try {
+                if (error != null) {
+                    UIComponents.showErrorMessage(owner, errorTitle, describe(error));
+                } else {
+                    onResult.accept(result);
+                }
+            } finally {
+                if (exclusive) {
+                    setExclusiveRunning(false);
+                }
+            }
+        }));
+        return true;
+    }
+    
+    /**
+     * Drops every pending result; the calls themselves may still complete in the background
+     */
+    public void cancel() {
+        cancelled = true;
+        for (CompletableFuture<?> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        idle();
+        setExclusiveRunning(false);
+    }
+    
+    private void setExclusiveRunning(boolean running) {
+        exclusiveRunning = running;
+        for (Component control : exclusiveControls) {
+            control.setEnabled(!running);
+        }
+    }
+    
+    private void idle() {
+        progressBar.setVisible(false);
+        owner.setCursor(Cursor.getDefaultCursor());
+    }
+    
+    private static String describe(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+            ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            return "The request timed out. Please check your balance before trying again.";
+        }
+        if (cause instanceof CancellationException) {
+            return "The request was cancelled";
+        }
+        return "Request failed: " + cause.getMessage();
+    }
+}
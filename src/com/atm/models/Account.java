@@ -2,8 +2,10 @@ package com.atm.models;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a bank account
@@ -16,45 +18,154 @@ public class Account {
     private String accountNumber;
     private String userId;
     private AccountType accountType;
-    private BigDecimal balance;
-    private BigDecimal dailyLimit;
+    // Balance in cents; every mutation is a compare-and-set so concurrent terminals never lose updates
+    private final AtomicLong balanceCents = new AtomicLong();
+    private Money dailyLimit;
     private LocalDateTime createdDate;
-    private boolean isActive;
-    private List<Transaction> transactions;
+    private volatile boolean isActive;
+    private final DailySpendTracker dailySpend = new DailySpendTracker(DailyLimitPolicy.getDefault());
+    
+    // Ring buffer of the most recent transactions; older ones are served by historySource
+    public static final int RECENT_TRANSACTION_CAPACITY = 64;
+    private final Transaction[] recentTransactions = new Transaction[RECENT_TRANSACTION_CAPACITY];
+    private long transactionCount;
+    private volatile TransactionHistorySource historySource;
+    
+    private static final Money DEFAULT_DAILY_LIMIT = Money.ofUnits(1000);
     
     public Account(String accountNumber, String userId, AccountType accountType, BigDecimal initialBalance) {
+        this(accountNumber, userId, accountType, Money.of(initialBalance));
+    }
+    
+    public Account(String accountNumber, String userId, AccountType accountType, Money initialBalance) {
         this.accountNumber = accountNumber;
         this.userId = userId;
         this.accountType = accountType;
-        this.balance = initialBalance;
-        this.dailyLimit = new BigDecimal("1000.00"); // Default daily limit
+        this.balanceCents.set(initialBalance.getCents());
+        this.dailyLimit = DEFAULT_DAILY_LIMIT;
         this.createdDate = LocalDateTime.now();
         this.isActive = true;
-        this.transactions = new ArrayList<>();
     }
     
     // Business logic methods
-    public boolean canWithdraw(BigDecimal amount) {
-        return isActive && balance.compareTo(amount) >= 0;
+    // Advisory only - the balance can change before a following withdraw; use tryWithdraw to check and debit
+    public boolean canWithdraw(Money amount) {
+        return isActive && balanceCents.get() >= amount.getCents();
     }
     
-    public void withdraw(BigDecimal amount) {
-        if (canWithdraw(amount)) {
-            balance = balance.subtract(amount);
-        } else {
+    /**
+     * Debits the amount if the account is active and has sufficient funds, checking and
+     * debiting in a single compare-and-set.
+     * @return the balance after the debit, or null if it was refused
+     */
+    public Money tryWithdraw(Money amount) {
+        long debit = amount.getCents();
+        while (true) {
+            long current = balanceCents.get();
+            if (!isActive || current < debit) {
+                return null;
+            }
+            long updated = current - debit;
+            if (balanceCents.compareAndSet(current, updated)) {
+                return Money.ofCents(updated);
+            }
+        }
+    }
+    
+    public Money withdraw(Money amount) {
+        Money balanceAfter = tryWithdraw(amount);
+        if (balanceAfter == null) {
             throw new IllegalArgumentException("Insufficient funds or inactive account");
         }
+        return balanceAfter;
     }
     
-    public void deposit(BigDecimal amount) {
+    /**
+     * Credits the amount and returns the balance after the credit
+     */
+    public Money deposit(Money amount) {
         if (!isActive) {
             throw new IllegalArgumentException("Account is inactive");
         }
-        balance = balance.add(amount);
+        return credit(amount);
+    }
+    
+    /**
+     * Puts back an amount taken by a withdrawal that could not be completed.
+     * Unlike deposit this also applies to an account deactivated in the meantime.
+     */
+    public Money reverseWithdrawal(Money amount) {
+        return credit(amount);
     }
     
-    public void addTransaction(Transaction transaction) {
-        transactions.add(transaction);
+    /**
+     * Takes back a deposit that was part of a step that could not be completed as a whole
+     */
+    public Money reverseDeposit(Money amount) {
+        return credit(amount.negate());
+    }
+    
+    private Money credit(Money amount) {
+        long credit = amount.getCents();
+        while (true) {
+            long current = balanceCents.get();
+            long updated = Math.addExact(current, credit);
+            if (balanceCents.compareAndSet(current, updated)) {
+                return Money.ofCents(updated);
+            }
+        }
+    }
+    
+    /**
+     * Reserves the amount against today's withdrawal limit. Reserve before debiting and
+     * release if the debit is refused, so concurrent withdrawals cannot jointly exceed the limit.
+     * @return false if the amount would take today's total over the daily limit
+     */
+    public boolean reserveDailySpend(Money amount, long nowMillis) {
+        return dailySpend.tryReserve(amount.getCents(), dailyLimit.getCents(), nowMillis);
+    }
+    
+    public void releaseDailySpend(Money amount, long reservedAtMillis) {
+        dailySpend.release(amount.getCents(), reservedAtMillis);
+    }
+    
+    public Money getDailySpent(long nowMillis) {
+        return Money.ofCents(dailySpend.getSpentCents(nowMillis));
+    }
+    
+    public Money getRemainingDailyLimit(long nowMillis) {
+        return Money.ofCents(Math.max(0, dailyLimit.getCents() - dailySpend.getSpentCents(nowMillis)));
+    }
+    
+    public DailySpendTracker getDailySpendTracker() {
+        return dailySpend;
+    }
+    
+    // BigDecimal overloads for callers at the API edge
+    public boolean canWithdraw(BigDecimal amount) { return canWithdraw(Money.of(amount)); }
+    public BigDecimal withdraw(BigDecimal amount) { return withdraw(Money.of(amount)).toBigDecimal(); }
+    public BigDecimal deposit(BigDecimal amount) { return deposit(Money.of(amount)).toBigDecimal(); }
+    
+    public synchronized void addTransaction(Transaction transaction) {
+        recentTransactions[(int) (transactionCount % RECENT_TRANSACTION_CAPACITY)] = transaction;
+        transactionCount++;
+    }
+    
+    /**
+     * Returns up to limit of the most recently added transactions, newest first.
+     * Never reaches past the in-memory ring, so at most RECENT_TRANSACTION_CAPACITY are returned.
+     */
+    public synchronized List<Transaction> getRecentTransactions(int limit) {
+        int count = (int) Math.min(Math.min(limit, RECENT_TRANSACTION_CAPACITY), transactionCount);
+        Transaction[] recent = new Transaction[Math.max(count, 0)];
+        for (int i = 0; i < recent.length; i++) {
+            recent[i] = recentTransactions[(int) ((transactionCount - 1 - i) % RECENT_TRANSACTION_CAPACITY)];
+        }
+        return Collections.unmodifiableList(Arrays.asList(recent));
+    }
+    
+    public void setHistorySource(TransactionHistorySource historySource) {
+        this.historySource = historySource;
     }
     
     // Getters and Setters
@@ -67,25 +178,47 @@ public class Account {
     public AccountType getAccountType() { return accountType; }
     public void setAccountType(AccountType accountType) { this.accountType = accountType; }
     
-    public BigDecimal getBalance() { return balance; }
-    public void setBalance(BigDecimal balance) { this.balance = balance; }
+    public BigDecimal getBalance() { return getBalanceMoney().toBigDecimal(); }
+    public void setBalance(BigDecimal balance) { setBalanceMoney(Money.of(balance)); }
+    public Money getBalanceMoney() { return Money.ofCents(balanceCents.get()); }
+    public void setBalanceMoney(Money balance) { balanceCents.set(balance.getCents()); }
     
-    public BigDecimal getDailyLimit() { return dailyLimit; }
-    public void setDailyLimit(BigDecimal dailyLimit) { this.dailyLimit = dailyLimit; }
+    public BigDecimal getDailyLimit() { return dailyLimit.toBigDecimal(); }
+    public void setDailyLimit(BigDecimal dailyLimit) { this.dailyLimit = Money.of(dailyLimit); }
+    public Money getDailyLimitMoney() { return dailyLimit; }
+    public void setDailyLimitMoney(Money dailyLimit) { this.dailyLimit = dailyLimit; }
     
     public LocalDateTime getCreatedDate() { return createdDate; }
+    public void setCreatedDate(LocalDateTime createdDate) { this.createdDate = createdDate; }
     
     public boolean isActive() { return isActive; }
     public void setActive(boolean active) { isActive = active; }
     
-    public List<Transaction> getTransactions() { return new ArrayList<>(transactions); }
+    /**
+     * Returns a read-only, oldest-first view of this account's transactions. With a history
+     * source the view is served by the backing store; otherwise it covers the in-memory ring.
+     */
+    public List<Transaction> getTransactions() {
+        TransactionHistorySource source = historySource;
+        if (source != null) {
+            return source.getTransactionHistory(accountNumber);
+        }
+        synchronized (this) {
+            int count = (int) Math.min(RECENT_TRANSACTION_CAPACITY, transactionCount);
+            Transaction[] recent = new Transaction[count];
+            for (int i = 0; i < count; i++) {
+                recent[i] = recentTransactions[(int) ((transactionCount - count + i) % RECENT_TRANSACTION_CAPACITY)];
+            }
+            return Collections.unmodifiableList(Arrays.asList(recent));
+        }
+    }
     
     @Override
     public String toString() {
         return "Account{" +
                 "accountNumber='" + accountNumber + '\'' +
                 ", accountType=" + accountType +
-                ", balance=" + balance +
+                ", balance=" + getBalanceMoney() +
                 ", isActive=" + isActive +
                 '}';
     }
@@ -15,7 +15,7 @@ public class Card {
     }
     
     private String cardNumber;
-    private String pin;
+    private String pinHash; // salted, see PinHasher; the PIN itself is never kept
     private String userId;
     private String accountNumber;
     private CardType cardType;
@@ -27,7 +27,7 @@ public class Card {
     
     public Card(String cardNumber, String pin, String userId, String accountNumber, CardType cardType) {
         this.cardNumber = cardNumber;
-        this.pin = pin;
+        this.pinHash = PinHasher.hash(pin);
         this.userId = userId;
         this.accountNumber = accountNumber;
         this.cardType = cardType;
@@ -37,13 +37,32 @@ public class Card {
         this.failedPinAttempts = 0;
     }
     
+    private Card() {
+    }
+    
+    /**
+     * Rebuilds a card from persisted state. A stored value that is not a hash is a PIN
+     * from a file written before PINs were hashed, and is hashed on load.
+     */
+    public static Card withPinHash(String cardNumber, String pinHash, String userId, String accountNumber,
+                                   CardType cardType) {
+        Card card = new Card();
+        card.cardNumber = cardNumber;
+        card.pinHash = PinHasher.isHash(pinHash) ? pinHash : PinHasher.hash(pinHash);
+        card.userId = userId;
+        card.accountNumber = accountNumber;
+        card.cardType = cardType;
+        card.cardStatus = CardStatus.ACTIVE;
+        return card;
+    }
+    
     // Business logic methods
     public boolean validatePin(String inputPin) {
         if (cardStatus != CardStatus.ACTIVE) {
             return false;
         }
         
-        if (pin.equals(inputPin)) {
+        if (PinHasher.matches(inputPin, pinHash)) {
             failedPinAttempts = 0; // Reset attempts on successful validation
             return true;
         } else {
@@ -55,6 +74,15 @@ public class Card {
         }
     }
     
+    // Checks a PIN without counting a failed attempt
+    public boolean matchesPin(String inputPin) {
+        return PinHasher.matches(inputPin, pinHash);
+    }
+    
+    public void changePin(String newPin) {
+        this.pinHash = PinHasher.hash(newPin);
+    }
+    
     public boolean isExpired() {
         return LocalDate.now().isAfter(expiryDate);
     }
@@ -82,8 +110,8 @@ public class Card {
     public String getCardNumber() { return cardNumber; }
     public void setCardNumber(String cardNumber) { this.cardNumber = cardNumber; }
     
-    public String getPin() { return pin; }
-    public void setPin(String pin) { this.pin = pin; }
+    public String getPinHash() { return pinHash; }
+    public void setPinHash(String pinHash) { this.pinHash = pinHash; }
     
     public String getUserId() { return userId; }
     public void setUserId(String userId) { this.userId = userId; }
@@ -101,8 +129,10 @@ public class Card {
     public void setExpiryDate(LocalDate expiryDate) { this.expiryDate = expiryDate; }
     
     public LocalDate getIssuedDate() { return issuedDate; }
+    public void setIssuedDate(LocalDate issuedDate) { this.issuedDate = issuedDate; }
     
     public int getFailedPinAttempts() { return failedPinAttempts; }
+    public void setFailedPinAttempts(int failedPinAttempts) { this.failedPinAttempts = failedPinAttempts; }
     
     // Get masked card number for display (e.g., **** **** **** 1234)
     public String getMaskedCardNumber() {
@@ -0,0 +1,68 @@
+package com.atm.models;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+/**
+ * How daily withdrawal limits are windowed: per calendar day starting at a cut-off time,
+ * or over a rolling 24 hours tracked in hourly buckets.
+ */
+public class DailyLimitPolicy {
+    public enum Window {
+        CALENDAR_DAY, ROLLING_24H
+    }
+    
+    static final long MILLIS_PER_HOUR = 3_600_000L;
+    private static final long SECONDS_PER_DAY = 86_400L;
+    
+    private static volatile DailyLimitPolicy defaultPolicy;
+    
+    private final Window window;
+    private final LocalTime cutoff;
+    private final ZoneId zone;
+    
+    public DailyLimitPolicy(Window window, LocalTime cutoff, ZoneId zone) {
+        this.window = window;
+        this.cutoff = cutoff;
+        this.zone = zone;
+    }
+    
+    /**
+     * Policy used by new accounts, read once from system properties:
+     *   atm.limit.daily.window  - CALENDAR_DAY or ROLLING_24H (default CALENDAR_DAY)
+     *   atm.limit.daily.cutoff  - time the calendar day resets, HH:mm (default 00:00)
+     */
+    public static DailyLimitPolicy getDefault() {
+        DailyLimitPolicy policy = defaultPolicy;
+        if (policy == null) {
+            policy = new DailyLimitPolicy(
+                Window.valueOf(System.getProperty("atm.limit.daily.window", "CALENDAR_DAY")),
+                LocalTime.parse(System.getProperty("atm.limit.daily.cutoff", "00:00")),
+                ZoneId.systemDefault());
+            defaultPolicy = policy;
+        }
+        return policy;
+    }
+    
+    public static void setDefault(DailyLimitPolicy policy) {
+        defaultPolicy = policy;
+    }
+    
+    /**
+     * Identifies the window containing the given instant: the cut-off-adjusted day number
+     * for CALENDAR_DAY, or the hour number for ROLLING_24H.
+     */
+    long windowId(long epochMillis) {
+        if (window == Window.ROLLING_24H) {
+            return Math.floorDiv(epochMillis, MILLIS_PER_HOUR);
+        }
+        long epochSecond = Math.floorDiv(epochMillis, 1000L);
+        int offsetSeconds = zone.getRules().getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+        return Math.floorDiv(epochSecond + offsetSeconds - cutoff.toSecondOfDay(), SECONDS_PER_DAY);
+    }
+    
+    public Window getWindow() { return window; }
+    public LocalTime getCutoff() { return cutoff; }
+    public ZoneId getZone() { return zone; }
+}
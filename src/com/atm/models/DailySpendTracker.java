@@ -0,0 +1,135 @@
+package com.atm.models;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running total of an account's withdrawals in the current daily-limit window.
+ *
+ * Each bucket packs a window id and the cents spent in it into one long, so a stale
+ * bucket resets itself on the next reservation and no transaction history is scanned.
+ * CALENDAR_DAY uses a single bucket updated by compare-and-set; ROLLING_24H keeps 24
+ * hourly buckets and sums the ones inside the last 24 hours.
+ */
+public class DailySpendTracker {
+    private static final int CENTS_BITS = 40; // up to ~$10 billion per window
+    private static final long CENTS_MASK = (1L << CENTS_BITS) - 1;
+    private static final int HOURS = 24;
+    
+    private final DailyLimitPolicy policy;
+    private final AtomicLongArray buckets;
+    
+    public DailySpendTracker(DailyLimitPolicy policy) {
+        this.policy = policy;
+        this.buckets = new AtomicLongArray(policy.getWindow() == DailyLimitPolicy.Window.ROLLING_24H ? HOURS : 1);
+    }
+    
+    /**
+     * Adds amountCents to the current window if the total stays within limitCents
+     * @return true if the amount was reserved
+     */
+    public boolean tryReserve(long amountCents, long limitCents, long nowMillis) {
+        long windowId = policy.windowId(nowMillis);
+        if (buckets.length() == 1) {
+            while (true) {
+                long current = buckets.get(0);
+                long spent = windowOf(current) == windowId ? centsOf(current) : 0;
+                if (spent + amountCents > limitCents) {
+                    return false;
+                }
+                if (buckets.compareAndSet(0, current, pack(windowId, spent + amountCents))) {
+                    return true;
+                }
+            }
+        }
+        // The rolling total spans several buckets, so check-and-add is done under the lock
+        synchronized (this) {
+            if (sumRolling(windowId) + amountCents > limitCents) {
+                return false;
+            }
+            int slot = Math.floorMod(windowId, HOURS);
+            long current = buckets.get(slot);
+            long spent = windowOf(current) == windowId ? centsOf(current) : 0;
+            buckets.set(slot, pack(windowId, spent + amountCents));
+            return true;
+        }
+    }
+    
+    /**
+     * Returns a reservation whose debit did not go through. A no-op once its window has passed.
+     */
+    public void release(long amountCents, long reservedAtMillis) {
+        long windowId = policy.windowId(reservedAtMillis);
+        if (buckets.length() == 1) {
+            while (true) {
+                long current = buckets.get(0);
+                if (windowOf(current) != windowId
+                        || buckets.compareAndSet(0, current, pack(windowId, Math.max(0, centsOf(current) - amountCents)))) {
+                    return;
+                }
+            }
+        }
+        synchronized (this) {
+            int slot = Math.floorMod(windowId, HOURS);
+            long current = buckets.get(slot);
+            if (windowOf(current) == windowId) {
+                buckets.set(slot, pack(windowId, Math.max(0, centsOf(current) - amountCents)));
+            }
+        }
+    }
+    
+    public long getSpentCents(long nowMillis) {
+        long windowId = policy.windowId(nowMillis);
+        if (buckets.length() == 1) {
+            long current = buckets.get(0);
+            return windowOf(current) == windowId ? centsOf(current) : 0;
+        }
+        synchronized (this) {
+            return sumRolling(windowId);
+        }
+    }
+    
+    private long sumRolling(long currentHour) {
+        long total = 0;
+        for (int i = 0; i < HOURS; i++) {
+            long bucket = buckets.get(i);
+            long hour = windowOf(bucket);
+            if (hour > currentHour - HOURS && hour <= currentHour) {
+                total += centsOf(bucket);
+            }
+        }
+        return total;
+    }
+    
+    // Persistence: the raw packed buckets
+    public long[] getState() {
+        long[] state = new long[buckets.length()];
+        for (int i = 0; i < state.length; i++) {
+            state[i] = buckets.get(i);
+        }
+        return state;
+    }
+    
+    public void setState(long[] state) {
+        if (state.length != buckets.length()) {
+            return; // written under a different window policy; start afresh
+        }
+        for (int i = 0; i < state.length; i++) {
+            buckets.set(i, state[i]);
+        }
+    }
+    
+    private static long pack(long windowId, long cents) {
+        if (cents > CENTS_MASK) {
+            throw new ArithmeticException("Daily spend overflow");
+        }
+        return (windowId << CENTS_BITS) | cents;
+    }
+    
+    private static long windowOf(long bucket) {
+        return bucket >> CENTS_BITS;
+    }
+    
+    private static long centsOf(long bucket) {
+        return bucket & CENTS_MASK;
+    }
+}
@@ -0,0 +1,141 @@
+package com.atm.models;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable amount of money held as a long count of cents.
+ * Arithmetic is overflow-checked and allocates only the result; BigDecimal is used
+ * only when converting at the API edge.
+ */
+public final class Money implements Comparable<Money> {
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    private static final long CENTS_PER_UNIT = 100;
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    public static Money ofUnits(long units) {
+        return ofCents(Math.multiplyExact(units, CENTS_PER_UNIT));
+    }
+
+    /**
+     * Converts a decimal amount, rejecting fractions of a cent
+     * @throws ArithmeticException if the amount has more than two decimal places or does not fit in a long
+     */
+    public static Money of(BigDecimal amount) {
+        BigDecimal normalized = amount.stripTrailingZeros();
+        if (normalized.scale() > SCALE) {
+            throw new ArithmeticException("Amount has fractions of a cent: " + amount.toPlainString());
+        }
+        return ofCents(normalized.movePointRight(SCALE).longValueExact());
+    }
+
+    // Null-tolerant conversions for optional fields
+    public static Money ofNullable(BigDecimal amount) {
+        return amount == null ? null : of(amount);
+    }
+
+    public static BigDecimal toBigDecimal(Money money) {
+        return money == null ? null : money.toBigDecimal();
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    // Arithmetic
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money times(long factor) {
+        return ofCents(Math.multiplyExact(cents, factor));
+    }
+
+    public Money negate() {
+        return ofCents(Math.negateExact(cents));
+    }
+
+    // Comparisons
+    public boolean isZero() { return cents == 0; }
+    public boolean isPositive() { return cents > 0; }
+    public boolean isNegative() { return cents < 0; }
+    public boolean isLessThan(Money other) { return cents < other.cents; }
+    public boolean isGreaterThan(Money other) { return cents > other.cents; }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Money)) return false;
+        return cents == ((Money) o).cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * Formats as a currency string with grouping, e.g. "$1,234.50" or "-$5.00"
+     */
+    public String format() {
+        return format(true);
+    }
+
+    // Plain decimal form, e.g. "1234.50", matching BigDecimal.toPlainString at scale 2
+    @Override
+    public String toString() {
+        return format(false);
+    }
+
+    private String format(boolean currency) {
+        // Long.MIN_VALUE has no positive counterpart, so work on the negative magnitude
+        long negative = cents > 0 ? -cents : cents;
+        char[] buffer = new char[32];
+        int position = buffer.length;
+
+        long fraction = -(negative % CENTS_PER_UNIT);
+        long units = -(negative / CENTS_PER_UNIT);
+        buffer[--position] = (char) ('0' + fraction % 10);
+        buffer[--position] = (char) ('0' + fraction / 10);
+        buffer[--position] = '.';
+        int digits = 0;
+        do {
+            if (currency && digits > 0 && digits % 3 == 0) {
+                buffer[--position] = ',';
+            }
+            buffer[--position] = (char) ('0' + units % 10);
+            units /= 10;
+            digits++;
+        } while (units > 0);
+        if (currency) {
+            buffer[--position] = '$';
+        }
+        if (cents < 0) {
+            buffer[--position] = '-';
+        }
+        return new String(buffer, position, buffer.length - position);
+    }
+}
@@ -0,0 +1,66 @@
+package com.atm.models;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Salted PBKDF2 hashes of card PINs, so that neither memory dumps of the cache nor the
+ * journal and snapshot files hold a PIN in the clear.
+ *
+ * Stored form: pbkdf2$<iterations>$<base64 salt>$<base64 hash>
+ */
+final class PinHasher {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String SCHEME = "pbkdf2";
+    private static final int ITERATIONS = 20_000;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    
+    private static final SecureRandom RANDOM = new SecureRandom();
+    
+    private PinHasher() {
+    }
+    
+    static String hash(String pin) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return SCHEME + '$' + ITERATIONS + '$' + encoder.encodeToString(salt) + '$'
+            + encoder.encodeToString(derive(pin, salt, ITERATIONS));
+    }
+    
+    // Compares in constant time; a malformed stored value never matches
+    static boolean matches(String pin, String stored) {
+        if (pin == null || !isHash(stored)) {
+            return false;
+        }
+        String[] parts = stored.split("\\$");
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(expected, derive(pin, salt, iterations));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    
+    static boolean isHash(String stored) {
+        return stored != null && stored.startsWith(SCHEME + '$') && stored.split("\\$").length == 4;
+    }
+    
+    private static byte[] derive(String pin, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(pin.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PIN hashing unavailable", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.atm.models;
+
+import com.atm.utils.NodeId;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues transaction reference numbers: "REF", the 4-digit node id (see NodeId),
+ * a 16-digit sequence and a Luhn check digit, e.g. REF000017923121274140013.
+ *
+ * The sequence is one counter per node, so references are unique and strictly increasing
+ * however many are issued in the same millisecond. It starts at the startup time in
+ * microseconds, which keeps references increasing across restarts as long as the node
+ * issued fewer than a million per second on average. The check digit lets a mistyped
+ * reference be rejected before any lookup.
+ */
+public final class ReferenceNumberSequencer {
+    public static final String PREFIX = "REF";
+    public static final int LENGTH = 24;
+    
+    private static final int NODE_DIGITS = 4;
+    private static final int SEQUENCE_DIGITS = 16;
+    
+    private static final AtomicLong SEQUENCE = new AtomicLong(System.currentTimeMillis() * 1000);
+    private static final char[] NODE = nodeDigits();
+    
+    private ReferenceNumberSequencer() {
+    }
+    
+    public static String next() {
+        long sequence = SEQUENCE.incrementAndGet();
+        char[] chars = new char[LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        System.arraycopy(NODE, 0, chars, PREFIX.length(), NODE_DIGITS);
+        int end = LENGTH - 1;
+        for (int i = end - 1; i >= end - SEQUENCE_DIGITS; i--) {
+            chars[i] = (char) ('0' + sequence % 10);
+            sequence /= 10;
+        }
+        chars[end] = (char) ('0' + checkDigit(chars, PREFIX.length(), end));
+        return new String(chars);
+    }
+    
+    /**
+     * Checks the format and check digit of a reference number
+     */
+    public static boolean isValid(String reference) {
+        if (reference == null || reference.length() != LENGTH || !reference.startsWith(PREFIX)) {
+            return false;
+        }
+        int end = LENGTH - 1;
+        int sum = 0;
+        boolean doubled = true; // the digit next to the check digit is doubled
+        for (int i = end - 1; i >= PREFIX.length(); i--) {
+            char c = reference.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            sum += luhnValue(c - '0', doubled);
+            doubled = !doubled;
+        }
+        return reference.charAt(end) == (char) ('0' + (10 - sum % 10) % 10);
+    }
+    
+    // Luhn check digit over chars[from, to)
+    private static int checkDigit(char[] chars, int from, int to) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int i = to - 1; i >= from; i--) {
+            sum += luhnValue(chars[i] - '0', doubled);
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+    
+    private static int luhnValue(int digit, boolean doubled) {
+        if (!doubled) {
+            return digit;
+        }
+        int value = digit * 2;
+        return value > 9 ? value - 9 : value;
+    }
+    
+    private static char[] nodeDigits() {
+        int node = NodeId.get();
+        char[] digits = new char[NODE_DIGITS];
+        for (int i = NODE_DIGITS - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + node % 10);
+            node /= 10;
+        }
+        return digits;
+    }
+}
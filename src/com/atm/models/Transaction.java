@@ -18,16 +18,21 @@ public class Transaction {
     private String transactionId;
     private String accountNumber;
     private TransactionType type;
-    private BigDecimal amount;
+    private Money amount;
     private String description;
     private LocalDateTime timestamp;
     private TransactionStatus status;
     private String destinationAccount; // For transfers
-    private BigDecimal balanceAfter;
+    private Money balanceAfter;
     private String referenceNumber;
     
     public Transaction(String transactionId, String accountNumber, TransactionType type, 
                       BigDecimal amount, String description) {
+        this(transactionId, accountNumber, type, Money.ofNullable(amount), description);
+    }
+    
+    public Transaction(String transactionId, String accountNumber, TransactionType type, 
+                      Money amount, String description) {
         this.transactionId = transactionId;
         this.accountNumber = accountNumber;
         this.type = type;
@@ -38,9 +43,13 @@ public class Transaction {
         this.referenceNumber = generateReferenceNumber();
     }
     
-    // Generate a reference number for the transaction
+    // For read-only views whose fields live in external storage
+    protected Transaction() {
+    }
+    
+    // Generate a reference number for the transaction; unique per node, see ReferenceNumberSequencer
     private String generateReferenceNumber() {
-        return "REF" + System.currentTimeMillis();
+        return ReferenceNumberSequencer.next();
     }
     
     // Getters and Setters
@@ -53,8 +62,10 @@ public class Transaction {
     public TransactionType getType() { return type; }
     public void setType(TransactionType type) { this.type = type; }
     
-    public BigDecimal getAmount() { return amount; }
-    public void setAmount(BigDecimal amount) { this.amount = amount; }
+    public BigDecimal getAmount() { return Money.toBigDecimal(getAmountMoney()); }
+    public void setAmount(BigDecimal amount) { setAmountMoney(Money.ofNullable(amount)); }
+    public Money getAmountMoney() { return amount; }
+    public void setAmountMoney(Money amount) { this.amount = amount; }
     
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
@@ -68,8 +79,10 @@ public class Transaction {
     public String getDestinationAccount() { return destinationAccount; }
     public void setDestinationAccount(String destinationAccount) { this.destinationAccount = destinationAccount; }
     
-    public BigDecimal getBalanceAfter() { return balanceAfter; }
-    public void setBalanceAfter(BigDecimal balanceAfter) { this.balanceAfter = balanceAfter; }
+    public BigDecimal getBalanceAfter() { return Money.toBigDecimal(getBalanceAfterMoney()); }
+    public void setBalanceAfter(BigDecimal balanceAfter) { setBalanceAfterMoney(Money.ofNullable(balanceAfter)); }
+    public Money getBalanceAfterMoney() { return balanceAfter; }
+    public void setBalanceAfterMoney(Money balanceAfter) { this.balanceAfter = balanceAfter; }
     
     public String getReferenceNumber() { return referenceNumber; }
     public void setReferenceNumber(String referenceNumber) { this.referenceNumber = referenceNumber; }
@@ -0,0 +1,16 @@
+package com.atm.models;
+
+import java.util.List;
+
+/**
+ * Backing store for an account's full transaction history.
+ * Accounts keep only their most recent transactions in memory and defer to this for the rest.
+ */
+@FunctionalInterface
+public interface TransactionHistorySource {
+    
+    /**
+     * Returns a read-only, oldest-first view of an account's transactions
+     */
+    List<Transaction> getTransactionHistory(String accountNumber);
+}
@@ -47,6 +47,7 @@ public class User {
     public void setEmail(String email) { this.email = email; }
     
     public LocalDateTime getAccountCreatedDate() { return accountCreatedDate; }
+    public void setAccountCreatedDate(LocalDateTime accountCreatedDate) { this.accountCreatedDate = accountCreatedDate; }
     
     public List<Account> getAccounts() { return accounts; }
     public void addAccount(Account account) { this.accounts.add(account); }
@@ -0,0 +1,117 @@
+package com.atm.persistence;
+
+import com.atm.models.Account;
+import com.atm.models.Card;
+import com.atm.models.Transaction;
+import com.atm.models.User;
+import com.atm.utils.DataCache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Applies decoded journal records to DataCache.
+ * Objects already in the cache are updated in place so that references held by
+ * users, accounts and sessions stay valid; new objects are added and linked to their owner.
+ */
+public class CacheLoader implements Journal.RecordHandler {
+    private final DataCache cache;
+    private int applied;
+    
+    public CacheLoader(DataCache cache) {
+        this.cache = cache;
+    }
+    
+    @Override
+    public void onRecord(Journal.RecordType type, ByteBuffer payload) {
+        switch (type) {
+            case CLEAR:
+                cache.clearAll();
+                break;
+            case USER:
+                applyUser(ModelCodec.readUser(payload));
+                break;
+            case ACCOUNT:
+                applyAccount(ModelCodec.readAccount(payload));
+                break;
+            case CARD:
+                applyCard(ModelCodec.readCard(payload));
+                break;
+            case TRANSACTION:
+                applyTransaction(ModelCodec.readTransaction(payload));
+                break;
+            case TRANSFER:
+                applyTransfer(ModelCodec.readTransfer(payload));
+                break;
+        }
+        applied++;
+    }
+    
+    public void applyUser(User user) {
+        User existing = cache.getUser(user.getUserId());
+        if (existing == null) {
+            cache.addUser(user);
+            return;
+        }
+        existing.setFirstName(user.getFirstName());
+        existing.setLastName(user.getLastName());
+        existing.setPhoneNumber(user.getPhoneNumber());
+        existing.setEmail(user.getEmail());
+        existing.setAccountCreatedDate(user.getAccountCreatedDate());
+    }
+    
+    public void applyAccount(Account account) {
+        Account existing = cache.getAccount(account.getAccountNumber());
+        if (existing == null) {
+            cache.addAccount(account);
+            User owner = cache.getUser(account.getUserId());
+            if (owner != null) {
+                owner.addAccount(account);
+            }
+            return;
+        }
+        existing.setAccountType(account.getAccountType());
+        existing.setBalanceMoney(account.getBalanceMoney());
+        existing.setDailyLimitMoney(account.getDailyLimitMoney());
+        existing.setCreatedDate(account.getCreatedDate());
+        existing.setActive(account.isActive());
+        existing.getDailySpendTracker().setState(account.getDailySpendTracker().getState());
+    }
+    
+    public void applyCard(Card card) {
+        Card existing = cache.getCard(card.getCardNumber());
+        if (existing == null) {
+            cache.addCard(card);
+            User owner = cache.getUser(card.getUserId());
+            if (owner != null) {
+                owner.addCard(card);
+            }
+            return;
+        }
+        existing.setPinHash(card.getPinHash());
+        existing.setAccountNumber(card.getAccountNumber());
+        existing.setCardType(card.getCardType());
+        existing.setCardStatus(card.getCardStatus());
+        existing.setExpiryDate(card.getExpiryDate());
+        existing.setIssuedDate(card.getIssuedDate());
+        existing.setFailedPinAttempts(card.getFailedPinAttempts());
+    }
+    
+    public void applyTransaction(Transaction transaction) {
+        if (cache.getTransaction(transaction.getTransactionId()) == null) {
+            cache.addTransaction(transaction);
+        }
+    }
+    
+    public void applyTransfer(TransferRecord transfer) {
+        for (Account account : transfer.getAccounts()) {
+            applyAccount(account);
+        }
+        for (Transaction transaction : transfer.getTransactions()) {
+            applyTransaction(transaction);
+        }
+    }
+    
+    public int getApplied() {
+        return applied;
+    }
+}
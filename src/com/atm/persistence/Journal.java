@@ -0,0 +1,565 @@
+package com.atm.persistence;
+
+import com.atm.models.Account;
+import com.atm.models.Card;
+import com.atm.models.Transaction;
+import com.atm.models.User;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of DataCache mutations.
+ *
+ * Each record is framed as [int length][int crc32][byte type][payload], where length
+ * and crc cover the type byte plus payload. Records hold the full state of the object
+ * after the mutation, so replay is a sequence of idempotent upserts. A torn or corrupt
+ * tail (e.g. from a crash mid-write) is truncated on replay.
+ *
+ * Appends are group-committed: callers encode and enqueue their record, and a single
+ * writer thread drains the queue into one gathering write plus one fsync per batch,
+ * completing every caller's future once its batch is durable.
+ *
+ * The journal is split into segment files named <path>.<start position>. Positions run
+ * on across segments, and the writer starts a new segment once the current one reaches
+ * the configured size. Segments that lie wholly before a durable snapshot's position are
+ * removed with deleteSegmentsBefore(), which keeps the journal from growing without bound.
+ */
+public class Journal implements Closeable {
+    public enum RecordType {
+        CLEAR, USER, ACCOUNT, CARD, TRANSACTION,
+        TRANSFER // account states plus transactions of one atomic transfer
+    }
+    
+    public enum FsyncPolicy {
+        ALWAYS,   // force each batch to disk before completing its futures
+        INTERVAL, // force from a background thread every fsync interval
+        NEVER     // leave flushing to the operating system
+    }
+    
+    public interface RecordHandler {
+        void onRecord(RecordType type, ByteBuffer payload);
+    }
+    
+    private static final RecordType[] RECORD_TYPES = RecordType.values();
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final int SEGMENT_DIGITS = 20;
+    
+    private final Path path;
+    private final long segmentBytes;
+    // start position -> segment file; guarded by itself, which also orders channel swaps against sync()
+    private final NavigableMap<Long, Path> segments;
+    private volatile FileChannel channel; // the last segment, the only one written to
+    private volatile long segmentStart;
+    private final FsyncPolicy fsyncPolicy;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final JournalMetrics metrics = new JournalMetrics();
+    private final ScheduledExecutorService syncScheduler;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    
+    // Encoding state, guarded by 'this' so queue order matches encode order
+    private final ModelCodec.Writer writer = new ModelCodec.Writer(512);
+    private final CRC32 crc = new CRC32();
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    
+    // Written only by the writer thread once replay has finished
+    private volatile long position;
+    
+    private Journal(Path path, NavigableMap<Long, Path> segments, PersistenceConfig config) throws IOException {
+        this.path = path;
+        this.segments = segments;
+        this.segmentBytes = config.getJournalSegmentBytes();
+        Map.Entry<Long, Path> last = segments.lastEntry();
+        this.segmentStart = last.getKey();
+        this.channel = openSegment(last.getValue());
+        this.fsyncPolicy = config.getFsyncPolicy();
+        this.batchWindowNanos = TimeUnit.MICROSECONDS.toNanos(config.getBatchWindowMicros());
+        this.maxBatchSize = config.getMaxBatchSize();
+        this.position = segmentStart + channel.size();
+        
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncScheduler.scheduleWithFixedDelay(this::syncQuietly,
+                config.getFsyncIntervalMillis(), config.getFsyncIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            syncScheduler = null;
+        }
+        
+        writerThread = new Thread(this::runWriter, "journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+    
+    public static Journal open(PersistenceConfig config) throws IOException {
+        Path path = config.getPath().toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        // A journal written before segmenting is one file starting at position 0
+        if (Files.isRegularFile(path)) {
+            Files.move(path, segmentPath(path, 0), StandardCopyOption.ATOMIC_MOVE);
+        }
+        
+        NavigableMap<Long, Path> segments = new TreeMap<>();
+        String prefix = path.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path.getParent(), prefix + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                if (suffix.length() == SEGMENT_DIGITS && suffix.chars().allMatch(Character::isDigit)) {
+                    segments.put(Long.parseLong(suffix), file);
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, segmentPath(path, 0));
+        }
+        return new Journal(path, segments, config);
+    }
+    
+    static Path segmentPath(Path path, long start) {
+        return path.resolveSibling(path.getFileName() + "." + String.format("%0" + SEGMENT_DIGITS + "d", start));
+    }
+    
+    private static FileChannel openSegment(Path segment) throws IOException {
+        return FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+    
+    /**
+     * Appends the current state of a model object. The object is encoded on the calling
+     * thread under the journal lock, so concurrent updates of the same object are
+     * journaled in order.
+     *
+     * @return a future completing with the journal position just past the record once
+     *         its batch has been written (and forced, under FsyncPolicy.ALWAYS)
+     */
+    public CompletableFuture<Long> append(RecordType type, Object model) {
+        CompletableFuture<Long> durable = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed || failure != null) {
+                durable.completeExceptionally(failure != null
+                    ? new UncheckedIOException("Journal " + path + " has failed", failure)
+                    : new IllegalStateException("Journal " + path + " is closed"));
+                return durable;
+            }
+            
+            writer.reset();
+            writer.putInt(0); // length, patched below
+            writer.putInt(0); // crc, patched below
+            writer.putByte(type.ordinal());
+            switch (type) {
+                case CLEAR:
+                    break;
+                case USER:
+                    ModelCodec.writeUser(writer, (User) model);
+                    break;
+                case ACCOUNT:
+                    ModelCodec.writeAccount(writer, (Account) model);
+                    break;
+                case CARD:
+                    ModelCodec.writeCard(writer, (Card) model);
+                    break;
+                case TRANSACTION:
+                    ModelCodec.writeTransaction(writer, (Transaction) model);
+                    break;
+                case TRANSFER:
+                    ModelCodec.writeTransfer(writer, (TransferRecord) model);
+                    break;
+            }
+            
+            int bodyLength = writer.size() - HEADER_SIZE;
+            crc.reset();
+            crc.update(writer.array(), HEADER_SIZE, bodyLength);
+            writer.putIntAt(0, bodyLength);
+            writer.putIntAt(4, (int) crc.getValue());
+            
+            byte[] frame = Arrays.copyOf(writer.array(), writer.size());
+            queue.add(new PendingWrite(ByteBuffer.wrap(frame), durable, System.nanoTime()));
+        }
+        return durable;
+    }
+    
+    /**
+     * Returns a future completing with the journal position once every record appended
+     * before this call has been written. Nothing is written for the barrier itself; call
+     * sync() afterwards to make that position durable under any fsync policy.
+     */
+    public CompletableFuture<Long> barrier() {
+        CompletableFuture<Long> written = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed || failure != null) {
+                written.completeExceptionally(failure != null
+                    ? new UncheckedIOException("Journal " + path + " has failed", failure)
+                    : new IllegalStateException("Journal " + path + " is closed"));
+                return written;
+            }
+            queue.add(new PendingWrite(ByteBuffer.allocate(0), written, System.nanoTime()));
+        }
+        return written;
+    }
+    
+    // Writer thread: one gathering write (+ one fsync) per batch
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        ByteBuffer[] frames = new ByteBuffer[maxBatchSize];
+        while (true) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + batchWindowNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch, frames);
+            } catch (InterruptedException e) {
+                if (closed && queue.isEmpty()) {
+                    return;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void commit(List<PendingWrite> batch, ByteBuffer[] frames) {
+        int count = batch.size();
+        long batchBytes = 0;
+        for (int i = 0; i < count; i++) {
+            frames[i] = batch.get(i).frame;
+            batchBytes += frames[i].remaining();
+        }
+        
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            channel.position(position - segmentStart);
+            long written = 0;
+            while (written < batchBytes) {
+                written += channel.write(frames, 0, count);
+            }
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                channel.force(false);
+            } else {
+                dirty.set(true);
+            }
+        } catch (IOException e) {
+            failure = e;
+            for (PendingWrite pending : batch) {
+                pending.durable.completeExceptionally(new UncheckedIOException("Failed to append to journal " + path, e));
+            }
+            return;
+        } finally {
+            Arrays.fill(frames, 0, count, null);
+        }
+        
+        long now = System.nanoTime();
+        long latencySum = 0;
+        long latencyMax = 0;
+        for (PendingWrite pending : batch) {
+            long latency = now - pending.enqueuedNanos;
+            latencySum += latency;
+            latencyMax = Math.max(latencyMax, latency);
+        }
+        metrics.recordBatch(count, batchBytes, latencySum, latencyMax);
+        
+        long batchStart = position;
+        position = batchStart + batchBytes;
+        long recordEnd = batchStart;
+        for (PendingWrite pending : batch) {
+            recordEnd += pending.frame.capacity();
+            pending.durable.complete(recordEnd);
+        }
+        
+        if (position - segmentStart >= segmentBytes) {
+            try {
+                roll();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+    
+    // Writer thread: continues in a new segment starting at the current position
+    private void roll() throws IOException {
+        Path next = segmentPath(path, position);
+        FileChannel nextChannel = openSegment(next);
+        synchronized (segments) {
+            FileChannel previous = channel;
+            previous.force(false); // everything before the new segment is on disk
+            dirty.set(false);
+            segments.put(position, next);
+            segmentStart = position;
+            channel = nextChannel;
+            previous.close();
+        }
+    }
+    
+    /**
+     * Deletes every segment that ends at or before the given position, e.g. that of the oldest
+     * snapshot still kept. The segment being written to is never deleted.
+     *
+     * @return the number of segments deleted
+     */
+    public int deleteSegmentsBefore(long position) throws IOException {
+        List<Path> obsolete = new ArrayList<>();
+        synchronized (segments) {
+            Long next;
+            while ((next = segments.higherKey(segments.firstKey())) != null && next <= position) {
+                obsolete.add(segments.pollFirstEntry().getValue());
+            }
+        }
+        for (Path segment : obsolete) {
+            Files.deleteIfExists(segment);
+        }
+        return obsolete.size();
+    }
+    
+    /**
+     * Replays every intact record from the start of the journal.
+     * Must be called before the first append, while the writer thread is idle.
+     *
+     * @return the number of records replayed
+     */
+    public int replay(RecordHandler handler) throws IOException {
+        return replay(0, handler);
+    }
+    
+    /**
+     * Replays every intact record from a record boundary, e.g. the position stored in a snapshot.
+     * Must be called before the first append, while the writer thread is idle.
+     *
+     * @return the number of records replayed
+     */
+    public synchronized int replay(long fromPosition, RecordHandler handler) throws IOException {
+        long end = segmentStart + channel.size();
+        if (fromPosition > end) {
+            // Records the snapshot already reflects are gone, so appending here would reuse their positions
+            throw new IOException("Journal " + path + " ends at position " + end
+                + ", before the requested replay position " + fromPosition);
+        }
+        long first = segments.firstKey();
+        if (fromPosition < first) {
+            // Replaying the rest would silently skip every record in between
+            throw new IOException("Journal " + path + " starts at position " + first
+                + "; records from " + fromPosition + " on were removed after a snapshot and cannot be replayed");
+        }
+        
+        int[] records = new int[1];
+        RecordHandler counting = (type, payload) -> {
+            handler.onRecord(type, payload);
+            records[0]++;
+        };
+        List<Map.Entry<Long, Path>> toReplay =
+            new ArrayList<>(segments.tailMap(segments.floorKey(fromPosition), true).entrySet());
+        for (Map.Entry<Long, Path> segment : toReplay) {
+            long start = segment.getKey();
+            boolean last = start == segmentStart;
+            try (FileChannel segmentChannel = last ? null : openSegment(segment.getValue())) {
+                FileChannel source = last ? channel : segmentChannel;
+                long validEnd = replaySegment(source, Math.max(fromPosition - start, 0), counting);
+                if (validEnd < source.size()) {
+                    System.out.println("Journal " + segment.getValue() + ": discarding " + (source.size() - validEnd)
+                        + " bytes of torn or corrupt tail");
+                    source.truncate(validEnd);
+                    source.force(true);
+                    if (!last) {
+                        // Later segments follow a gap and cannot be trusted; continue writing here
+                        dropSegmentsAfter(start);
+                        synchronized (segments) {
+                            channel.close();
+                            channel = openSegment(segment.getValue());
+                            segmentStart = start;
+                        }
+                        position = start + validEnd;
+                        return records[0];
+                    }
+                }
+                if (last) {
+                    position = start + validEnd;
+                }
+            }
+        }
+        return records[0];
+    }
+    
+    private void dropSegmentsAfter(long start) throws IOException {
+        List<Path> later;
+        synchronized (segments) {
+            later = new ArrayList<>(segments.tailMap(start, false).values());
+            segments.tailMap(start, false).clear();
+        }
+        for (Path segment : later) {
+            System.out.println("Journal: discarding segment " + segment + " after a corrupt record");
+            Files.deleteIfExists(segment);
+        }
+    }
+    
+    // Replays one segment from an offset within it; returns the offset just past its last intact record
+    private long replaySegment(FileChannel channel, long fromOffset, RecordHandler handler) throws IOException {
+        long validEnd = fromOffset;
+        channel.position(fromOffset);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+        byte[] body = new byte[1024];
+        while (true) {
+            int length;
+            int expectedCrc;
+            try {
+                length = in.readInt();
+                expectedCrc = in.readInt();
+                if (length < 1 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                if (body.length < length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                in.readFully(body, 0, length);
+            } catch (EOFException e) {
+                break;
+            }
+            
+            crc.reset();
+            crc.update(body, 0, length);
+            RecordType type = recordType(body[0]);
+            if ((int) crc.getValue() != expectedCrc || type == null) {
+                break;
+            }
+            
+            handler.onRecord(type, ByteBuffer.wrap(body, 1, length - 1).slice());
+            validEnd += HEADER_SIZE + length;
+        }
+        return validEnd;
+    }
+    
+    // Record type for a stored ordinal, or null if the byte is not a known type
+    static RecordType recordType(int ordinal) {
+        return ordinal >= 0 && ordinal < RECORD_TYPES.length ? RECORD_TYPES[ordinal] : null;
+    }
+    
+    public void sync() throws IOException {
+        synchronized (segments) {
+            if (dirty.getAndSet(false)) {
+                channel.force(false);
+            }
+        }
+    }
+    
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Journal fsync failed: " + e.getMessage());
+        }
+    }
+    
+    // A failed journal rejects every later append; callers should not apply changes it cannot record
+    public boolean hasFailed() {
+        return failure != null;
+    }
+    
+    // Start of the oldest segment still kept; records before it can no longer be replayed
+    public long getFirstPosition() {
+        synchronized (segments) {
+            return segments.firstKey();
+        }
+    }
+    
+    // Position just past the last record written by the writer thread
+    public long getPosition() {
+        return position;
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    public JournalMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Stops accepting appends, commits everything already queued and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (syncScheduler != null) {
+            syncScheduler.shutdown();
+        }
+        synchronized (segments) {
+            if (channel.isOpen()) {
+                channel.force(true);
+                channel.close();
+            }
+        }
+    }
+    
+    private static class PendingWrite {
+        private final ByteBuffer frame;
+        private final CompletableFuture<Long> durable;
+        private final long enqueuedNanos;
+        
+        PendingWrite(ByteBuffer frame, CompletableFuture<Long> durable, long enqueuedNanos) {
+            this.frame = frame;
+            this.durable = durable;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.atm.persistence;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group-commit statistics. Updated only by the journal writer thread, readable from any thread.
+ */
+public class JournalMetrics {
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong totalCommitLatencyNanos = new AtomicLong();
+    private final AtomicLong maxCommitLatencyNanos = new AtomicLong();
+    
+    void recordBatch(int batchSize, long batchBytes, long latencyNanosSum, long latencyNanosMax) {
+        batches.incrementAndGet();
+        records.addAndGet(batchSize);
+        bytes.addAndGet(batchBytes);
+        totalCommitLatencyNanos.addAndGet(latencyNanosSum);
+        if (batchSize > maxBatchSize.get()) {
+            maxBatchSize.set(batchSize);
+        }
+        if (latencyNanosMax > maxCommitLatencyNanos.get()) {
+            maxCommitLatencyNanos.set(latencyNanosMax);
+        }
+    }
+    
+    public long getBatchCount() { return batches.get(); }
+    public long getRecordCount() { return records.get(); }
+    public long getBytesWritten() { return bytes.get(); }
+    public long getMaxBatchSize() { return maxBatchSize.get(); }
+    
+    public double getAverageBatchSize() {
+        long batchCount = batches.get();
+        return batchCount == 0 ? 0 : (double) records.get() / batchCount;
+    }
+    
+    // Latency is measured per record, from enqueue until its batch is durable
+    public double getAverageCommitLatencyMicros() {
+        long recordCount = records.get();
+        return recordCount == 0 ? 0 : totalCommitLatencyNanos.get() / 1000.0 / recordCount;
+    }
+    
+    public double getMaxCommitLatencyMicros() {
+        return maxCommitLatencyNanos.get() / 1000.0;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("JournalMetrics{batches=%d, records=%d, bytes=%d, avgBatch=%.1f, maxBatch=%d, " +
+                "avgCommitLatency=%.0fus, maxCommitLatency=%.0fus}",
+            getBatchCount(), getRecordCount(), getBytesWritten(), getAverageBatchSize(), getMaxBatchSize(),
+            getAverageCommitLatencyMicros(), getMaxCommitLatencyMicros());
+    }
+}
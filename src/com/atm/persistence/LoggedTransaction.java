@@ -0,0 +1,76 @@
+package com.atm.persistence;
+
+import com.atm.models.Money;
+import com.atm.models.Transaction;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only Transaction backed by a TransactionLog record.
+ * Holds only the record position; every getter decodes its field from the mapped segment.
+ */
+class LoggedTransaction extends Transaction {
+    private final TransactionLog log;
+    private final long position;
+    
+    LoggedTransaction(TransactionLog log, long position) {
+        this.log = log;
+        this.position = position;
+    }
+    
+    long getPosition() {
+        return position;
+    }
+    
+    @Override public String getTransactionId() { return log.readTransactionId(position); }
+    @Override public String getAccountNumber() { return log.readAccountNumber(position); }
+    @Override public TransactionType getType() { return log.readType(position); }
+    @Override public Money getAmountMoney() { return log.readAmount(position); }
+    @Override public String getDescription() { return log.readDescription(position); }
+    @Override public LocalDateTime getTimestamp() { return log.readTimestamp(position); }
+    @Override public TransactionStatus getStatus() { return log.readStatus(position); }
+    @Override public String getDestinationAccount() { return log.readDestinationAccount(position); }
+    @Override public Money getBalanceAfterMoney() { return log.readBalanceAfter(position); }
+    @Override public String getReferenceNumber() { return log.readReferenceNumber(position); }
+    
+    // Log records are immutable
+    @Override public void setTransactionId(String transactionId) { throw readOnly(); }
+    @Override public void setAccountNumber(String accountNumber) { throw readOnly(); }
+    @Override public void setType(TransactionType type) { throw readOnly(); }
+    @Override public void setAmountMoney(Money amount) { throw readOnly(); }
+    @Override public void setDescription(String description) { throw readOnly(); }
+    @Override public void setTimestamp(LocalDateTime timestamp) { throw readOnly(); }
+    @Override public void setStatus(TransactionStatus status) { throw readOnly(); }
+    @Override public void setDestinationAccount(String destinationAccount) { throw readOnly(); }
+    @Override public void setBalanceAfterMoney(Money balanceAfter) { throw readOnly(); }
+    @Override public void setReferenceNumber(String referenceNumber) { throw readOnly(); }
+    
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Logged transactions are read-only");
+    }
+    
+    // Views of the same record are interchangeable
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LoggedTransaction)) return false;
+        LoggedTransaction that = (LoggedTransaction) o;
+        return position == that.position && log == that.log;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Long.hashCode(position);
+    }
+    
+    @Override
+    public String toString() {
+        return "Transaction{" +
+                "transactionId='" + getTransactionId() + '\'' +
+                ", type=" + getType() +
+                ", amount=" + getAmount() +
+                ", timestamp=" + getTimestamp() +
+                ", status=" + getStatus() +
+                '}';
+    }
+}
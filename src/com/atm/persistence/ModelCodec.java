@@ -0,0 +1,273 @@
+package com.atm.persistence;
+
+import com.atm.models.Account;
+import com.atm.models.Card;
+import com.atm.models.Money;
+import com.atm.models.Transaction;
+import com.atm.models.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of the model objects, shared by the journal and snapshots.
+ * Enums are stored by ordinal, so new constants must only ever be appended.
+ * Money is stored as a long count of cents.
+ */
+public final class ModelCodec {
+    private ModelCodec() {
+    }
+    
+    // Encoding
+    public static void writeUser(Writer out, User user) {
+        out.putString(user.getUserId());
+        out.putString(user.getFirstName());
+        out.putString(user.getLastName());
+        out.putString(user.getPhoneNumber());
+        out.putString(user.getEmail());
+        out.putDateTime(user.getAccountCreatedDate());
+    }
+    
+    public static void writeAccount(Writer out, Account account) {
+        out.putString(account.getAccountNumber());
+        out.putString(account.getUserId());
+        out.putByte(account.getAccountType().ordinal());
+        out.putMoney(account.getBalanceMoney());
+        out.putMoney(account.getDailyLimitMoney());
+        out.putDateTime(account.getCreatedDate());
+        out.putByte(account.isActive() ? 1 : 0);
+        long[] dailySpend = account.getDailySpendTracker().getState();
+        out.putInt(dailySpend.length);
+        for (long bucket : dailySpend) {
+            out.putLong(bucket);
+        }
+    }
+    
+    public static void writeCard(Writer out, Card card) {
+        out.putString(card.getCardNumber());
+        out.putString(card.getPinHash());
+        out.putString(card.getUserId());
+        out.putString(card.getAccountNumber());
+        out.putByte(card.getCardType().ordinal());
+        out.putByte(card.getCardStatus().ordinal());
+        out.putDate(card.getExpiryDate());
+        out.putDate(card.getIssuedDate());
+        out.putInt(card.getFailedPinAttempts());
+    }
+    
+    public static void writeTransaction(Writer out, Transaction transaction) {
+        out.putString(transaction.getTransactionId());
+        out.putString(transaction.getAccountNumber());
+        out.putByte(transaction.getType().ordinal());
+        out.putMoney(transaction.getAmountMoney());
+        out.putString(transaction.getDescription());
+        out.putDateTime(transaction.getTimestamp());
+        out.putByte(transaction.getStatus().ordinal());
+        out.putString(transaction.getDestinationAccount());
+        out.putMoney(transaction.getBalanceAfterMoney());
+        out.putString(transaction.getReferenceNumber());
+    }
+    
+    public static void writeTransfer(Writer out, TransferRecord transfer) {
+        out.putInt(transfer.getAccounts().size());
+        for (Account account : transfer.getAccounts()) {
+            writeAccount(out, account);
+        }
+        out.putInt(transfer.getTransactions().size());
+        for (Transaction transaction : transfer.getTransactions()) {
+            writeTransaction(out, transaction);
+        }
+    }
+    
+    // Decoding
+    public static User readUser(ByteBuffer in) {
+        User user = new User(getString(in), getString(in), getString(in), getString(in), getString(in));
+        user.setAccountCreatedDate(getDateTime(in));
+        return user;
+    }
+    
+    public static Account readAccount(ByteBuffer in) {
+        String accountNumber = getString(in);
+        String userId = getString(in);
+        Account.AccountType type = Account.AccountType.values()[in.get()];
+        Account account = new Account(accountNumber, userId, type, getMoney(in));
+        account.setDailyLimitMoney(getMoney(in));
+        account.setCreatedDate(getDateTime(in));
+        account.setActive(in.get() != 0);
+        long[] dailySpend = new long[in.getInt()];
+        for (int i = 0; i < dailySpend.length; i++) {
+            dailySpend[i] = in.getLong();
+        }
+        account.getDailySpendTracker().setState(dailySpend);
+        return account;
+    }
+    
+    public static Card readCard(ByteBuffer in) {
+        String cardNumber = getString(in);
+        String pinHash = getString(in);
+        String userId = getString(in);
+        String accountNumber = getString(in);
+        Card.CardType type = Card.CardType.values()[in.get()];
+        Card card = Card.withPinHash(cardNumber, pinHash, userId, accountNumber, type);
+        card.setCardStatus(Card.CardStatus.values()[in.get()]);
+        card.setExpiryDate(getDate(in));
+        card.setIssuedDate(getDate(in));
+        card.setFailedPinAttempts(in.getInt());
+        return card;
+    }
+    
+    public static Transaction readTransaction(ByteBuffer in) {
+        String transactionId = getString(in);
+        String accountNumber = getString(in);
+        Transaction.TransactionType type = Transaction.TransactionType.values()[in.get()];
+        Money amount = getMoney(in);
+        String description = getString(in);
+        Transaction transaction = new Transaction(transactionId, accountNumber, type, amount, description);
+        transaction.setTimestamp(getDateTime(in));
+        transaction.setStatus(Transaction.TransactionStatus.values()[in.get()]);
+        transaction.setDestinationAccount(getString(in));
+        transaction.setBalanceAfterMoney(getMoney(in));
+        transaction.setReferenceNumber(getString(in));
+        return transaction;
+    }
+    
+    public static TransferRecord readTransfer(ByteBuffer in) {
+        int accountCount = in.getInt();
+        List<Account> accounts = new ArrayList<>(accountCount);
+        for (int i = 0; i < accountCount; i++) {
+            accounts.add(readAccount(in));
+        }
+        int transactionCount = in.getInt();
+        List<Transaction> transactions = new ArrayList<>(transactionCount);
+        for (int i = 0; i < transactionCount; i++) {
+            transactions.add(readTransaction(in));
+        }
+        return new TransferRecord(accounts, transactions);
+    }
+    
+    // Primitive readers - nullable values are prefixed with a length/marker of -1
+    static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    static Money getMoney(ByteBuffer in) {
+        long cents = in.getLong();
+        return cents == Long.MIN_VALUE ? null : Money.ofCents(cents);
+    }
+    
+    static LocalDateTime getDateTime(ByteBuffer in) {
+        long epochSecond = in.getLong();
+        int nano = in.getInt();
+        return nano < 0 ? null : LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+    
+    static LocalDate getDate(ByteBuffer in) {
+        long epochDay = in.getLong();
+        return epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+    
+    /**
+     * Growable big-endian byte sink; reused across records to avoid per-record buffers.
+     */
+    public static final class Writer {
+        private byte[] buffer;
+        private int position;
+        
+        public Writer(int initialCapacity) {
+            this.buffer = new byte[Math.max(16, initialCapacity)];
+        }
+        
+        public void reset() {
+            position = 0;
+        }
+        
+        public int size() {
+            return position;
+        }
+        
+        public byte[] array() {
+            return buffer;
+        }
+        
+        public ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buffer, 0, position);
+        }
+        
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+        
+        public void putByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+        
+        public void putInt(int value) {
+            ensure(4);
+            buffer[position++] = (byte) (value >>> 24);
+            buffer[position++] = (byte) (value >>> 16);
+            buffer[position++] = (byte) (value >>> 8);
+            buffer[position++] = (byte) value;
+        }
+        
+        public void putIntAt(int index, int value) {
+            buffer[index] = (byte) (value >>> 24);
+            buffer[index + 1] = (byte) (value >>> 16);
+            buffer[index + 2] = (byte) (value >>> 8);
+            buffer[index + 3] = (byte) value;
+        }
+        
+        public void putLong(long value) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
+        }
+        
+        public void putBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+        
+        public void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes, 0, bytes.length);
+        }
+        
+        public void putMoney(Money value) {
+            putLong(value == null ? Long.MIN_VALUE : value.getCents());
+        }
+        
+        public void putDateTime(LocalDateTime value) {
+            if (value == null) {
+                putLong(0);
+                putInt(-1);
+                return;
+            }
+            putLong(value.toEpochSecond(ZoneOffset.UTC));
+            putInt(value.getNano());
+        }
+        
+        public void putDate(LocalDate value) {
+            putLong(value == null ? Long.MIN_VALUE : value.toEpochDay());
+        }
+    }
+}
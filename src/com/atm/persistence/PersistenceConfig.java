@@ -0,0 +1,118 @@
+package com.atm.persistence;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Settings for the write-ahead journal, its group-commit writer, snapshots and the
+ * memory-mapped transaction log
+ */
+public class PersistenceConfig {
+    private Path path = Paths.get("data", "atm.journal");
+    private Journal.FsyncPolicy fsyncPolicy = Journal.FsyncPolicy.ALWAYS;
+    private long fsyncIntervalMillis = 100;
+    private long batchWindowMicros = 0; // 0 = commit whatever queued up during the previous fsync
+    private int maxBatchSize = 256;
+    private long journalSegmentBytes = 64L * 1024 * 1024;
+    private Path snapshotPath = Paths.get("data", "atm.snapshot");
+    private long snapshotIntervalSeconds = 300;
+    private boolean transactionLogEnabled = true;
+    private Path transactionLogPath = Paths.get("data", "txlog");
+    private int transactionLogSegmentBytes = 64 * 1024 * 1024;
+    
+    /**
+     * Reads settings from system properties:
+     *   atm.data.dir                   - directory holding the journal (default "data")
+     *   atm.journal.fsync              - ALWAYS, INTERVAL or NEVER (default ALWAYS)
+     *   atm.journal.fsync.interval.ms  - fsync period for INTERVAL (default 100)
+     *   atm.journal.batch.window.us    - how long the writer waits to grow a batch (default 0)
+     *   atm.journal.batch.max          - maximum records per batch (default 256)
+     *   atm.journal.segment.mb         - size at which the journal starts a new segment file (default 64)
+     *   atm.snapshot.interval.s        - seconds between background snapshots (default 300)
+     *   atm.txlog.enabled              - keep transactions in the memory-mapped log (default true)
+     *   atm.txlog.segment.mb           - size of each log segment file in MB (default 64)
+     */
+    public static PersistenceConfig fromSystemProperties() {
+        PersistenceConfig config = new PersistenceConfig();
+        String dataDir = System.getProperty("atm.data.dir", "data");
+        config.setPath(Paths.get(dataDir, "atm.journal"));
+        config.setSnapshotPath(Paths.get(dataDir, "atm.snapshot"));
+        config.setTransactionLogPath(Paths.get(dataDir, "txlog"));
+        config.setFsyncPolicy(Journal.FsyncPolicy.valueOf(
+            System.getProperty("atm.journal.fsync", "ALWAYS").toUpperCase(Locale.ROOT)));
+        config.setFsyncIntervalMillis(Long.getLong("atm.journal.fsync.interval.ms", config.getFsyncIntervalMillis()));
+        config.setBatchWindowMicros(Long.getLong("atm.journal.batch.window.us", config.getBatchWindowMicros()));
+        config.setMaxBatchSize(Integer.getInteger("atm.journal.batch.max", config.getMaxBatchSize()));
+        config.setJournalSegmentBytes(
+            Long.getLong("atm.journal.segment.mb", config.getJournalSegmentBytes() >> 20) << 20);
+        config.setSnapshotIntervalSeconds(Long.getLong("atm.snapshot.interval.s", config.getSnapshotIntervalSeconds()));
+        config.setTransactionLogEnabled(Boolean.parseBoolean(System.getProperty("atm.txlog.enabled", "true")));
+        config.setTransactionLogSegmentBytes(
+            Integer.getInteger("atm.txlog.segment.mb", config.getTransactionLogSegmentBytes() >> 20) << 20);
+        return config;
+    }
+    
+    public Path getPath() { return path; }
+    public void setPath(Path path) { this.path = path; }
+    
+    public Journal.FsyncPolicy getFsyncPolicy() { return fsyncPolicy; }
+    public void setFsyncPolicy(Journal.FsyncPolicy fsyncPolicy) { this.fsyncPolicy = fsyncPolicy; }
+    
+    public long getFsyncIntervalMillis() { return fsyncIntervalMillis; }
+    public void setFsyncIntervalMillis(long fsyncIntervalMillis) {
+        if (fsyncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Fsync interval must be positive");
+        }
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+    
+    public long getBatchWindowMicros() { return batchWindowMicros; }
+    public void setBatchWindowMicros(long batchWindowMicros) {
+        if (batchWindowMicros < 0) {
+            throw new IllegalArgumentException("Batch window cannot be negative");
+        }
+        this.batchWindowMicros = batchWindowMicros;
+    }
+    
+    public int getMaxBatchSize() { return maxBatchSize; }
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be at least 1");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+    
+    public long getJournalSegmentBytes() { return journalSegmentBytes; }
+    public void setJournalSegmentBytes(long journalSegmentBytes) {
+        if (journalSegmentBytes <= 0) {
+            throw new IllegalArgumentException("Journal segment size must be positive");
+        }
+        this.journalSegmentBytes = journalSegmentBytes;
+    }
+    
+    public Path getSnapshotPath() { return snapshotPath; }
+    public void setSnapshotPath(Path snapshotPath) { this.snapshotPath = snapshotPath; }
+    
+    public long getSnapshotIntervalSeconds() { return snapshotIntervalSeconds; }
+    public void setSnapshotIntervalSeconds(long snapshotIntervalSeconds) {
+        if (snapshotIntervalSeconds <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive");
+        }
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+    
+    public boolean isTransactionLogEnabled() { return transactionLogEnabled; }
+    public void setTransactionLogEnabled(boolean transactionLogEnabled) { this.transactionLogEnabled = transactionLogEnabled; }
+    
+    public Path getTransactionLogPath() { return transactionLogPath; }
+    public void setTransactionLogPath(Path transactionLogPath) { this.transactionLogPath = transactionLogPath; }
+    
+    public int getTransactionLogSegmentBytes() { return transactionLogSegmentBytes; }
+    public void setTransactionLogSegmentBytes(int transactionLogSegmentBytes) {
+        if (transactionLogSegmentBytes <= 0 || transactionLogSegmentBytes % TransactionLog.RECORD_SIZE != 0) {
+            throw new IllegalArgumentException("Segment size must be a positive multiple of " + TransactionLog.RECORD_SIZE);
+        }
+        this.transactionLogSegmentBytes = transactionLogSegmentBytes;
+    }
+}
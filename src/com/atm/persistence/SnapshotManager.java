@@ -0,0 +1,393 @@
+package com.atm.persistence;
+
+import com.atm.models.Account;
+import com.atm.models.Card;
+import com.atm.models.Transaction;
+import com.atm.models.User;
+import com.atm.utils.DataCache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Point-in-time snapshots of DataCache.
+ *
+ * A snapshot is written from a background thread while the cache keeps serving
+ * writes, so it is fuzzy rather than consistent. That is safe because it stores the
+ * journal position captured before iteration starts: every mutation the snapshot may
+ * have missed lies after that position and is replayed on restore, and journal records
+ * are idempotent upserts.
+ *
+ * When DataCache keeps its transactions in a TransactionLog, the log is forced to disk
+ * instead and transaction records are left out of the snapshot. The snapshot stores the
+ * log size whose records were journaled by its journal position; on restore the log is
+ * truncated to it, which drops records whose journal record was lost in a crash.
+ *
+ * File layout: [long magic][int version][long journalPosition][long createdAtMillis]
+ * [long transactionLogSize, -1 without a log] then records [byte type][int length][payload], then [byte END][long count][int crc32]
+ * where the crc covers all record bytes.
+ */
+public class SnapshotManager {
+    private static final long MAGIC = 0x41544D534E415031L; // "ATMSNAP1"
+    // 2: money stored as long cents, 3: daily spend on accounts, 4: transaction log size
+    private static final int VERSION = 4;
+    private static final int HEADER_SIZE = 8 + 4 + 8 + 8 + 8;
+    private static final int VERSION_3_HEADER_SIZE = 8 + 4 + 8 + 8;
+    private static final int END_MARKER = 0xFF;
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+    
+    private final Path snapshotPath;
+    private final Path previousPath;
+    private final DataCache cache;
+    private ScheduledExecutorService scheduler;
+    
+    public SnapshotManager(Path snapshotPath, DataCache cache) {
+        this.snapshotPath = snapshotPath;
+        this.previousPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".prev");
+        this.cache = cache;
+    }
+    
+    /**
+     * Takes a snapshot every intervalSeconds on a daemon thread
+     */
+    public synchronized void start(Journal journal, long intervalSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                writeSnapshot(journal);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Snapshot failed: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+    
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+    
+    /**
+     * Writes a snapshot to a temporary file and atomically moves it into place. The snapshot
+     * it replaces is kept as a fallback, and journal segments that lie wholly before that
+     * fallback's position are deleted.
+     *
+     * @return the number of records written
+     */
+    public synchronized long writeSnapshot(Journal journal) throws IOException {
+        // Captured before iterating: anything later is covered by the journal tail. Forced before
+        // it is recorded, since under FsyncPolicy INTERVAL or NEVER records up to it may still be
+        // in the page cache, and a crash would leave the snapshot pointing past the journal's end.
+        // With stores paused, the log size and the barrier cover the same transactions.
+        TransactionLog transactionLog = cache.getTransactionLog();
+        long[] transactionLogSize = {-1};
+        long journalPosition = 0;
+        if (journal != null) {
+            CompletableFuture<Long> barrier = cache.whileStoresPaused(() -> {
+                transactionLogSize[0] = transactionLog != null ? transactionLog.size() : -1;
+                return journal.barrier();
+            });
+            try {
+                journalPosition = barrier.join();
+            } catch (CompletionException e) {
+                throw new IOException("Journal " + journal.getPath() + " has failed", e.getCause());
+            }
+            journal.sync();
+        } else if (transactionLog != null) {
+            transactionLogSize[0] = transactionLog.size();
+        }
+        Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        if (snapshotPath.getParent() != null) {
+            Files.createDirectories(snapshotPath.getParent());
+        }
+        
+        RecordSink sink;
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 256 * 1024));
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalPosition);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(transactionLogSize[0]);
+            
+            sink = new RecordSink(out);
+            cache.forEachUser(sink::user);
+            cache.forEachAccount(sink::account);
+            cache.forEachCard(sink::card);
+            if (transactionLog != null) {
+                transactionLog.force();
+            } else {
+                cache.forEachTransaction(sink::transaction);
+            }
+            sink.finish();
+            out.flush();
+            channel.force(true);
+        }
+        
+        long retainFrom = -1;
+        if (Files.exists(snapshotPath)) {
+            retainFrom = readJournalPosition(snapshotPath);
+            Files.move(snapshotPath, previousPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (journal != null && retainFrom >= 0) {
+            journal.deleteSegmentsBefore(retainFrom);
+        }
+        return sink.count;
+    }
+    
+    // Journal position stored in a snapshot's header, or -1 if the header is not readable
+    private static long readJournalPosition(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(VERSION_3_HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            header.flip();
+            if (header.remaining() < VERSION_3_HEADER_SIZE || header.getLong() != MAGIC
+                    || headerSize(header.getInt()) < 0) {
+                return -1;
+            }
+            return header.getLong();
+        }
+    }
+    
+    // Header size of a snapshot format version, or -1 if the version is not readable
+    private static int headerSize(int version) {
+        return version == VERSION ? HEADER_SIZE : version == 3 ? VERSION_3_HEADER_SIZE : -1;
+    }
+    
+    /**
+     * Memory-maps the latest snapshot, or the previous one if the latest is unusable, and
+     * applies it through the loader. A snapshot is only usable if the journal still holds
+     * every record from its position on. Without a usable snapshot the transaction log is
+     * emptied, as the whole journal is replayed.
+     *
+     * @return the journal position to resume replay from, or 0 if there is no usable snapshot
+     * @throws IOException if no usable snapshot is left and the journal no longer starts at 0
+     */
+    public long restore(CacheLoader loader, Journal journal) throws IOException {
+        long firstJournalPosition = journal.getFirstPosition();
+        long journalPosition = restore(snapshotPath, loader, firstJournalPosition);
+        if (journalPosition < 0) {
+            journalPosition = restore(previousPath, loader, firstJournalPosition);
+        }
+        if (journalPosition < 0) {
+            if (firstJournalPosition > 0) {
+                throw new IOException("No usable snapshot, and journal " + journal.getPath() + " starts at position "
+                    + firstJournalPosition + "; records before it are gone");
+            }
+            cache.truncateTransactionLog(0);
+        }
+        return Math.max(journalPosition, 0);
+    }
+    
+    // Returns -1, with the cache untouched, if the file is missing, fails verification or
+    // lies before the start of the journal
+    private long restore(Path path, CacheLoader loader, long firstJournalPosition) throws IOException {
+        if (!Files.exists(path)) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < VERSION_3_HEADER_SIZE) {
+                System.out.println("Ignoring truncated snapshot " + path);
+                return -1;
+            }
+            MappedWindow window = new MappedWindow(channel, size);
+            ByteBuffer header = window.at(0, VERSION_3_HEADER_SIZE);
+            int headerSize = header.getLong() == MAGIC ? headerSize(header.getInt()) : -1;
+            if (headerSize < 0 || size < headerSize) {
+                System.out.println("Ignoring snapshot with unknown format " + path);
+                return -1;
+            }
+            long journalPosition = header.getLong();
+            header.getLong(); // created-at, informational only
+            if (journalPosition < firstJournalPosition) {
+                System.out.println("Ignoring snapshot " + path + ": the journal no longer holds records from position "
+                    + journalPosition + " on");
+                return -1;
+            }
+            // Version 3 snapshots predate the stored size, so their log is kept as it is
+            long transactionLogSize = headerSize == HEADER_SIZE ? window.at(VERSION_3_HEADER_SIZE, 8).getLong() : -1;
+            
+            // Verify the whole file before touching the cache
+            CRC32 crc = new CRC32();
+            long recordsEnd;
+            long expectedCount;
+            try {
+                recordsEnd = scan(window, headerSize, crc);
+                ByteBuffer trailer = window.at(recordsEnd, 1 + 8 + 4);
+                trailer.get();
+                expectedCount = trailer.getLong();
+                if ((int) crc.getValue() != trailer.getInt()) {
+                    throw new IOException("bad checksum");
+                }
+            } catch (IOException e) {
+                // The journal is kept from the previous snapshot's position on, so that one still recovers everything
+                System.out.println("Ignoring unreadable snapshot " + path + ": " + e.getMessage());
+                return -1;
+            }
+            
+            if (transactionLogSize >= 0) {
+                cache.truncateTransactionLog(transactionLogSize);
+            }
+            long offset = headerSize;
+            long applied = 0;
+            while (offset < recordsEnd) {
+                ByteBuffer recordHeader = window.at(offset, 5);
+                Journal.RecordType type = Journal.recordType(recordHeader.get());
+                int length = recordHeader.getInt();
+                loader.onRecord(type, window.at(offset + 5, length));
+                offset += 5 + length;
+                applied++;
+            }
+            if (applied != expectedCount) {
+                throw new IOException("Snapshot record count mismatch in " + path);
+            }
+            System.out.println("Restored " + applied + " records from snapshot " + path);
+            return journalPosition;
+        }
+    }
+    
+    // Walks the record section updating the crc; returns the offset of the END marker
+    private long scan(MappedWindow window, int headerSize, CRC32 crc) throws IOException {
+        long offset = headerSize;
+        while (true) {
+            ByteBuffer recordHeader = window.at(offset, 1);
+            int type = recordHeader.get() & 0xFF;
+            if (type == END_MARKER) {
+                return offset;
+            }
+            if (Journal.recordType(type) == null) {
+                throw new IOException("Corrupt snapshot record at offset " + offset);
+            }
+            int length = window.at(offset + 1, 4).getInt();
+            if (length < 0 || offset + 5 + length > window.size) {
+                throw new IOException("Corrupt snapshot record at offset " + offset);
+            }
+            crc.update(window.at(offset, 5 + length));
+            offset += 5 + length;
+        }
+    }
+    
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+    
+    // Streams type-tagged records and keeps the running crc
+    private static class RecordSink {
+        private final DataOutputStream out;
+        private final ModelCodec.Writer writer = new ModelCodec.Writer(512);
+        private final CRC32 crc = new CRC32();
+        private long count;
+        
+        RecordSink(DataOutputStream out) {
+            this.out = out;
+        }
+        
+        void user(User user) {
+            writer.reset();
+            ModelCodec.writeUser(writer, user);
+            emit(Journal.RecordType.USER);
+        }
+        
+        void account(Account account) {
+            writer.reset();
+            ModelCodec.writeAccount(writer, account);
+            emit(Journal.RecordType.ACCOUNT);
+        }
+        
+        void card(Card card) {
+            writer.reset();
+            ModelCodec.writeCard(writer, card);
+            emit(Journal.RecordType.CARD);
+        }
+        
+        void transaction(Transaction transaction) {
+            writer.reset();
+            ModelCodec.writeTransaction(writer, transaction);
+            emit(Journal.RecordType.TRANSACTION);
+        }
+        
+        private void emit(Journal.RecordType type) {
+            int length = writer.size();
+            byte[] recordHeader = {
+                (byte) type.ordinal(),
+                (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length
+            };
+            try {
+                out.write(recordHeader);
+                out.write(writer.array(), 0, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            crc.update(recordHeader, 0, recordHeader.length);
+            crc.update(writer.array(), 0, length);
+            count++;
+        }
+        
+        void finish() throws IOException {
+            out.writeByte(END_MARKER);
+            out.writeLong(count);
+            out.writeInt((int) crc.getValue());
+        }
+    }
+    
+    // Read-only mapping of a large file through sliding windows of at most MAP_WINDOW bytes
+    private static class MappedWindow {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer buffer;
+        private long start = -1;
+        
+        MappedWindow(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+        
+        // Returns a big-endian view of [offset, offset + length), remapping when it falls outside the window
+        ByteBuffer at(long offset, int length) throws IOException {
+            if (offset < 0 || offset + length > size) {
+                throw new IOException("Snapshot truncated at offset " + offset);
+            }
+            if (buffer == null || offset < start || offset + length > start + buffer.capacity()) {
+                start = offset;
+                long windowSize = Math.min(Math.max(MAP_WINDOW, length), size - offset);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, windowSize);
+            }
+            int relative = (int) (offset - start);
+            ByteBuffer view = buffer.duplicate();
+            view.position(relative);
+            view.limit(relative + length);
+            return view.slice();
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package com.atm.persistence;
+
+import com.atm.models.Money;
+import com.atm.models.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Transaction history stored in fixed-size memory-mapped segment files.
+ *
+ * Every transaction occupies one fixed-width record, so a record is addressed by its
+ * log position alone (segment = position / recordsPerSegment). The heap only holds a
+ * per-account list of positions; the records themselves stay in the page cache and are
+ * decoded lazily through LoggedTransaction views.
+ *
+ * Record layout (RECORD_SIZE bytes, big-endian):
+ *   0 committed marker, 1 type, 2 status, 4 amount cents, 12 balance-after cents,
+ *   20 epoch second, 28 nano, then length-prefixed text fields and a trailing crc32.
+ * The marker is written last, so a record interrupted by a crash is never read back.
+ * Mapped pages are not forced per append; durability comes from the journal. A record is
+ * logged before its journal record, so a snapshot forces the log and stores the size whose
+ * records the journal already holds; on restore the log is truncated to that size and
+ * later records are logged again as the journal tail is replayed.
+ */
+public class TransactionLog implements Closeable {
+    public static final int RECORD_SIZE = 256;
+    
+    private static final byte COMMITTED = 1;
+    private static final long NULL_CENTS = Long.MIN_VALUE;
+    private static final int NULL_LENGTH = 0xFF;
+    
+    // Field offsets within a record
+    private static final int OFF_MARKER = 0;
+    private static final int OFF_TYPE = 1;
+    private static final int OFF_STATUS = 2;
+    private static final int OFF_AMOUNT = 4;
+    private static final int OFF_BALANCE_AFTER = 12;
+    private static final int OFF_EPOCH_SECOND = 20;
+    private static final int OFF_NANO = 28;
+    private static final int OFF_TRANSACTION_ID = 32;
+    private static final int LEN_TRANSACTION_ID = 47;
+    private static final int OFF_ACCOUNT = 80;
+    private static final int LEN_ACCOUNT = 23;
+    private static final int OFF_DESTINATION = 104;
+    private static final int LEN_DESTINATION = 23;
+    private static final int OFF_REFERENCE = 128;
+    private static final int LEN_REFERENCE = 31;
+    private static final int OFF_DESCRIPTION = 160;
+    private static final int LEN_DESCRIPTION = 91;
+    private static final int OFF_CRC = 252;
+    
+    private static final Transaction.TransactionType[] TYPES = Transaction.TransactionType.values();
+    private static final Transaction.TransactionStatus[] STATUSES = Transaction.TransactionStatus.values();
+    
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final Map<String, PositionList> positionsByAccount = new ConcurrentHashMap<>();
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    
+    // Guarded by 'this'
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final CRC32 crc = new CRC32();
+    private volatile long size;
+    
+    private TransactionLog(Path directory, int segmentSizeBytes) {
+        this.directory = directory;
+        this.recordsPerSegment = segmentSizeBytes / RECORD_SIZE;
+    }
+    
+    /**
+     * Opens (or creates) the log in a directory and rebuilds the per-account position
+     * index by scanning the committed records.
+     */
+    public static TransactionLog open(Path directory, int segmentSizeBytes) throws IOException {
+        if (segmentSizeBytes < RECORD_SIZE || segmentSizeBytes % RECORD_SIZE != 0) {
+            throw new IllegalArgumentException("Segment size must be a multiple of " + RECORD_SIZE + " bytes");
+        }
+        Files.createDirectories(directory);
+        TransactionLog log = new TransactionLog(directory, segmentSizeBytes);
+        log.recover();
+        return log;
+    }
+    
+    private void recover() throws IOException {
+        long position = 0;
+        while (Files.exists(segmentPath(segmentOf(position)))) {
+            MappedByteBuffer segment = segment(segmentOf(position));
+            int offset = offsetOf(position);
+            if (segment.get(offset + OFF_MARKER) != COMMITTED || !checksumMatches(segment, offset)) {
+                break;
+            }
+            index(readString(segment, offset + OFF_ACCOUNT), position, readTimestamp(position));
+            position++;
+        }
+        size = position;
+        
+        // Mapped pages reach the disk in any order, so records after a torn one may have
+        // survived it; they follow a gap and are dropped
+        int segmentCount = segments.length;
+        while (Files.exists(segmentPath(segmentCount))) {
+            segment(segmentCount++);
+        }
+        if (clearMarkers(position, (long) segmentCount * recordsPerSegment) > 0) {
+            force();
+        }
+    }
+    
+    /**
+     * Appends a transaction and returns its log position
+     */
+    public synchronized long append(Transaction transaction) {
+        long position = size;
+        // Stamp no earlier than the account's previous record, so append order is also timestamp order
+        // even when concurrent writers created their transactions in the opposite order
+        PositionList previous = positionsByAccount.get(transaction.getAccountNumber());
+        LocalDateTime latest = previous != null ? previous.lastTimestamp() : null;
+        if (latest != null && transaction.getTimestamp().isBefore(latest)) {
+            transaction.setTimestamp(latest);
+        }
+        Arrays.fill(scratch, (byte) 0);
+        ByteBuffer record = ByteBuffer.wrap(scratch);
+        record.put(OFF_TYPE, (byte) transaction.getType().ordinal());
+        record.put(OFF_STATUS, (byte) transaction.getStatus().ordinal());
+        record.putLong(OFF_AMOUNT, toCents(transaction.getAmountMoney()));
+        record.putLong(OFF_BALANCE_AFTER, toCents(transaction.getBalanceAfterMoney()));
+        record.putLong(OFF_EPOCH_SECOND, transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        record.putInt(OFF_NANO, transaction.getTimestamp().getNano());
+        putString(record, OFF_TRANSACTION_ID, LEN_TRANSACTION_ID, transaction.getTransactionId(), false);
+        putString(record, OFF_ACCOUNT, LEN_ACCOUNT, transaction.getAccountNumber(), false);
+        putString(record, OFF_DESTINATION, LEN_DESTINATION, transaction.getDestinationAccount(), false);
+        putString(record, OFF_REFERENCE, LEN_REFERENCE, transaction.getReferenceNumber(), false);
+        putString(record, OFF_DESCRIPTION, LEN_DESCRIPTION, transaction.getDescription(), true);
+        crc.reset();
+        crc.update(scratch, 1, OFF_CRC - 1);
+        record.putInt(OFF_CRC, (int) crc.getValue());
+        
+        MappedByteBuffer segment;
+        try {
+            segment = segment(segmentOf(position));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map transaction log segment", e);
+        }
+        int offset = offsetOf(position);
+        ByteBuffer target = segment.duplicate();
+        target.position(offset + 1);
+        target.put(scratch, 1, RECORD_SIZE - 1);
+        segment.put(offset + OFF_MARKER, COMMITTED);
+        
+        index(transaction.getAccountNumber(), position, transaction.getTimestamp());
+        size = position + 1;
+        return position;
+    }
+    
+    public Transaction view(long position) {
+        return new LoggedTransaction(this, position);
+    }
+    
+    public long size() {
+        return size;
+    }
+    
+    // Positions of an account's records in append order, or null if it has none
+    public PositionList positions(String accountNumber) {
+        return positionsByAccount.get(accountNumber);
+    }
+    
+    /**
+     * Read-only, oldest-first view of an account's records as of this call.
+     * Views are created per element on access, so nothing is decoded up front.
+     */
+    public List<Transaction> history(String accountNumber) {
+        PositionList positions = positionsByAccount.get(accountNumber);
+        return positions == null ? Collections.emptyList() : new HistoryView(positions, positions.size());
+    }
+    
+    public void forEachPosition(LongConsumer action) {
+        long end = size;
+        for (long position = 0; position < end; position++) {
+            action.accept(position);
+        }
+    }
+    
+    /**
+     * Discards every record from a position on, e.g. those a snapshot does not confirm,
+     * and forces the cleared markers to disk
+     */
+    public synchronized void truncate(long newSize) {
+        if (newSize >= size) {
+            return;
+        }
+        clearMarkers(newSize, size);
+        force();
+        positionsByAccount.clear();
+        for (long position = 0; position < newSize; position++) {
+            index(readAccountNumber(position), position, readTimestamp(position));
+        }
+        size = newSize;
+    }
+    
+    // Clears the committed markers of mapped records in [from, to); returns how many were set
+    private int clearMarkers(long from, long to) {
+        int cleared = 0;
+        for (long position = from; position < to; position++) {
+            MappedByteBuffer segment = bufferFor(position);
+            int offset = offsetOf(position);
+            if (segment.get(offset + OFF_MARKER) != 0) {
+                segment.put(offset + OFF_MARKER, (byte) 0);
+                cleared++;
+            }
+        }
+        return cleared;
+    }
+    
+    /**
+     * Discards every record by clearing their committed markers
+     */
+    public synchronized void reset() {
+        for (long position = 0; position < size; position++) {
+            segments[segmentOf(position)].put(offsetOf(position) + OFF_MARKER, (byte) 0);
+        }
+        positionsByAccount.clear();
+        size = 0;
+    }
+    
+    // Flushes mapped pages to disk
+    public void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+    
+    @Override
+    public void close() {
+        force();
+    }
+    
+    // Field access for LoggedTransaction
+    public Transaction.TransactionType readType(long position) {
+        return TYPES[bufferFor(position).get(offsetOf(position) + OFF_TYPE)];
+    }
+    
+    Transaction.TransactionStatus readStatus(long position) {
+        return STATUSES[bufferFor(position).get(offsetOf(position) + OFF_STATUS)];
+    }
+    
+    Money readAmount(long position) {
+        return fromCents(bufferFor(position).getLong(offsetOf(position) + OFF_AMOUNT));
+    }
+    
+    Money readBalanceAfter(long position) {
+        return fromCents(bufferFor(position).getLong(offsetOf(position) + OFF_BALANCE_AFTER));
+    }
+    
+    public LocalDateTime readTimestamp(long position) {
+        MappedByteBuffer segment = bufferFor(position);
+        int offset = offsetOf(position);
+        return LocalDateTime.ofEpochSecond(segment.getLong(offset + OFF_EPOCH_SECOND),
+            segment.getInt(offset + OFF_NANO), ZoneOffset.UTC);
+    }
+    
+    public String readTransactionId(long position) {
+        return readString(bufferFor(position), offsetOf(position) + OFF_TRANSACTION_ID);
+    }
+    
+    String readAccountNumber(long position) {
+        return readString(bufferFor(position), offsetOf(position) + OFF_ACCOUNT);
+    }
+    
+    String readDestinationAccount(long position) {
+        return readString(bufferFor(position), offsetOf(position) + OFF_DESTINATION);
+    }
+    
+    public String readReferenceNumber(long position) {
+        return readString(bufferFor(position), offsetOf(position) + OFF_REFERENCE);
+    }
+    
+    String readDescription(long position) {
+        return readString(bufferFor(position), offsetOf(position) + OFF_DESCRIPTION);
+    }
+    
+    // Helpers
+    private int segmentOf(long position) {
+        return (int) (position / recordsPerSegment);
+    }
+    
+    private int offsetOf(long position) {
+        return (int) (position % recordsPerSegment) * RECORD_SIZE;
+    }
+    
+    private Path segmentPath(int segmentIndex) {
+        return directory.resolve(String.format("segment-%06d.log", segmentIndex));
+    }
+    
+    private MappedByteBuffer bufferFor(long position) {
+        return segments[segmentOf(position)];
+    }
+    
+    // Maps a segment on first use; segment files are preallocated to their full size
+    private synchronized MappedByteBuffer segment(int segmentIndex) throws IOException {
+        MappedByteBuffer[] current = segments;
+        if (segmentIndex < current.length) {
+            return current[segmentIndex];
+        }
+        MappedByteBuffer[] grown = Arrays.copyOf(current, segmentIndex + 1);
+        for (int i = current.length; i <= segmentIndex; i++) {
+            try (FileChannel channel = FileChannel.open(segmentPath(i), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+            }
+        }
+        segments = grown;
+        return grown[segmentIndex];
+    }
+    
+    private void index(String accountNumber, long position, LocalDateTime timestamp) {
+        positionsByAccount.computeIfAbsent(accountNumber, key -> new PositionList()).add(position, timestamp);
+    }
+    
+    private boolean checksumMatches(MappedByteBuffer segment, int offset) {
+        ByteBuffer body = segment.duplicate();
+        body.position(offset + 1);
+        body.limit(offset + OFF_CRC);
+        CRC32 check = new CRC32();
+        check.update(body);
+        return (int) check.getValue() == segment.getInt(offset + OFF_CRC);
+    }
+    
+    private static long toCents(Money amount) {
+        return amount == null ? NULL_CENTS : amount.getCents();
+    }
+    
+    private static Money fromCents(long cents) {
+        return cents == NULL_CENTS ? null : Money.ofCents(cents);
+    }
+    
+    // Text fields are [length byte][UTF-8 bytes]; descriptions are truncated, identifiers must fit
+    private static void putString(ByteBuffer record, int offset, int capacity, String value, boolean truncate) {
+        if (value == null) {
+            record.put(offset, (byte) NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        if (length > capacity) {
+            if (!truncate) {
+                throw new IllegalArgumentException("Value too long for transaction log field: " + value);
+            }
+            length = capacity;
+            while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+                length--; // do not split a multi-byte character
+            }
+        }
+        record.put(offset, (byte) length);
+        for (int i = 0; i < length; i++) {
+            record.put(offset + 1 + i, bytes[i]);
+        }
+    }
+    
+    private static String readString(ByteBuffer segment, int offset) {
+        int length = segment.get(offset) & 0xFF;
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = segment.get(offset + 1 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private final class HistoryView extends AbstractList<Transaction> implements RandomAccess {
+        private final PositionList positions;
+        private final int size;
+        
+        HistoryView(PositionList positions, int size) {
+            this.positions = positions;
+            this.size = size;
+        }
+        
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return view(positions.get(index));
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+    
+    /**
+     * Append-only list of log positions. Appends are serialised by the log; readers take
+     * size() first and then read up to it without locking.
+     */
+    public static final class PositionList {
+        private volatile long[] positions = new long[8];
+        private volatile int size;
+        private volatile LocalDateTime lastTimestamp;
+        // False if records were logged out of timestamp order, e.g. by a version that did not stamp on append
+        private volatile boolean timeOrdered = true;
+        
+        synchronized void add(long position, LocalDateTime timestamp) {
+            long[] current = positions;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                positions = current;
+            }
+            current[size] = position;
+            if (lastTimestamp != null && timestamp.isBefore(lastTimestamp)) {
+                timeOrdered = false;
+            } else {
+                lastTimestamp = timestamp;
+            }
+            size = size + 1;
+        }
+        
+        LocalDateTime lastTimestamp() {
+            return lastTimestamp;
+        }
+        
+        // When true, positions in order have non-decreasing timestamps and can be binary-searched by time
+        public boolean isTimeOrdered() {
+            return timeOrdered;
+        }
+        
+        public int size() {
+            return size;
+        }
+        
+        public long get(int index) {
+            return positions[index];
+        }
+        
+        // Index of the first entry whose position is greater than the given one
+        public int indexAfter(long position, int count) {
+            long[] current = positions;
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (current[mid] <= position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
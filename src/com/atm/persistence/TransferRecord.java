@@ -0,0 +1,25 @@
+package com.atm.persistence;
+
+import com.atm.models.Account;
+import com.atm.models.Transaction;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The accounts and transactions touched by a transfer, journaled as a single record.
+ * Account states are encoded when the record is appended, so it must be appended while
+ * the accounts are still locked against other transfers.
+ */
+public class TransferRecord {
+    private final List<Account> accounts;
+    private final List<Transaction> transactions;
+    
+    public TransferRecord(List<Account> accounts, List<Transaction> transactions) {
+        this.accounts = Collections.unmodifiableList(accounts);
+        this.transactions = Collections.unmodifiableList(transactions);
+    }
+    
+    public List<Account> getAccounts() { return accounts; }
+    public List<Transaction> getTransactions() { return transactions; }
+}
@@ -2,20 +2,54 @@ package com.atm.services;
 
 import com.atm.models.*;
 import com.atm.utils.DataCache;
+import com.atm.utils.EdtChecker;
+import com.atm.utils.IdGenerator;
+import com.atm.utils.IdempotencyCache;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for handling ATM operations like withdrawal, transfer, balance inquiry
  */
 public class ATMService {
+    private static final int MAX_STATEMENT_PAGE_SIZE = 100;
+    private static final int MAX_BATCH_TRANSFERS = 1000;
+    private static final String UNCONFIRMED_MESSAGE =
+        "was processed but could not be confirmed as saved. Please check your balance before trying again.";
+    
+    // Limits, built once rather than parsed on every request
+    private static final Money MIN_WITHDRAWAL = Money.ofUnits(10);
+    private static final Money MAX_WITHDRAWAL = Money.ofUnits(1000);
+    private static final Money MIN_TRANSFER = Money.ofUnits(1);
+    private static final Money MIN_INITIAL_DEPOSIT = Money.ofUnits(10);
+    private static final Money CHECKING_DAILY_LIMIT = Money.ofUnits(1000);
+    private static final Money SAVINGS_DAILY_LIMIT = Money.ofUnits(500);
+    private static final Money BUSINESS_DAILY_LIMIT = Money.ofUnits(5000);
+    
+    // How long, and for how many requests, a client idempotency key is remembered
+    private static final long IDEMPOTENCY_TTL_MILLIS = Long.getLong("atm.idempotency.ttl.s", 600) * 1000;
+    private static final int IDEMPOTENCY_MAX_KEYS = Integer.getInteger("atm.idempotency.max", 10_000);
+    
     private DataCache cache;
     private static ATMService instance;
+    // Non-null in single-writer ledger mode, where all balance mutations go through the ledger thread
+    private final LedgerEngine ledger;
+    // Serves mini-statements without touching the objects writers mutate
+    private final AccountReadModel readModel;
+    // Results of keyed withdrawals and transfers, so a terminal's retry is answered without re-executing
+    private final IdempotencyCache<TransactionResult> idempotentRequests =
+        new IdempotencyCache<>(IDEMPOTENCY_TTL_MILLIS, IDEMPOTENCY_MAX_KEYS);
     
     private ATMService() {
         this.cache = DataCache.getInstance();
+        this.ledger = LedgerEngine.isEnabled() ? LedgerEngine.getInstance() : null;
+        this.readModel = AccountReadModel.getInstance();
     }
     
     public static synchronized ATMService getInstance() {
@@ -25,10 +59,32 @@ public class ATMService {
         return instance;
     }
     
+    /**
+     * Perform withdrawal operation at most once per client key.
+     * A retry with the same key, card and amount returns the original result without debiting again;
+     * concurrent retries wait for the first one. A null key behaves like withdraw(sessionId, amount).
+     */
+    public TransactionResult withdraw(String sessionId, BigDecimal amount, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return withdraw(sessionId, amount);
+        }
+        AuthenticationService.AuthenticatedUser authUser = 
+            AuthenticationService.getInstance().validateSession(sessionId);
+        if (authUser == null) {
+            return new TransactionResult(false, "Session expired. Please login again.", null);
+        }
+        
+        return idempotentRequests.execute(
+            requestKey("W", authUser, idempotencyKey), amountFingerprint(amount),
+            () -> withdraw(sessionId, amount), ATMService::reusedKeyResult,
+            ATMService::tooManyRequestsResult);
+    }
+    
     /**
      * Perform withdrawal operation
      */
     public TransactionResult withdraw(String sessionId, BigDecimal amount) {
+        EdtChecker.checkNotOnEdt("withdraw");
         // Validate session
         AuthenticationService.AuthenticatedUser authUser = 
             AuthenticationService.getInstance().validateSession(sessionId);
@@ -37,51 +93,91 @@ public class ATMService {
         }
         
         // Validate amount
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+        Money money = toMoney(amount);
+        if (money == null || !money.isPositive()) {
             return new TransactionResult(false, "Invalid withdrawal amount", null);
         }
         
         // Check minimum withdrawal amount
-        if (amount.compareTo(new BigDecimal("10")) < 0) {
+        if (money.isLessThan(MIN_WITHDRAWAL)) {
             return new TransactionResult(false, "Minimum withdrawal amount is $10", null);
         }
         
         // Check maximum withdrawal amount
-        if (amount.compareTo(new BigDecimal("1000")) > 0) {
+        if (money.isGreaterThan(MAX_WITHDRAWAL)) {
             return new TransactionResult(false, "Maximum withdrawal amount is $1000 per transaction", null);
         }
         
         Account account = authUser.getAccount();
         
         // Check if account can perform withdrawal
-        if (!account.canWithdraw(amount)) {
+        if (!account.canWithdraw(money)) {
             return new TransactionResult(false, "Insufficient funds", null);
         }
         
-        // Check daily limit (simplified - in real world, would check daily total)
-        if (amount.compareTo(account.getDailyLimit()) > 0) {
+        // Check daily limit against the single amount; the running total is checked with the debit
+        if (money.isGreaterThan(account.getDailyLimitMoney())) {
             return new TransactionResult(false, 
-                "Amount exceeds daily limit of $" + account.getDailyLimit(), null);
+                "Amount exceeds daily limit of $" + account.getDailyLimitMoney(), null);
+        }
+        
+        if (!cache.isWritable()) {
+            return storageUnavailable();
         }
         
         try {
+            if (ledger != null) {
+                LedgerEngine.LedgerResult result = ledger.withdraw(account, money).join();
+                if (!result.isSuccess()) {
+                    return new TransactionResult(false, result.getMessage(), null);
+                }
+                if (!result.isConfirmed()) {
+                    return unconfirmed("Withdrawal", result.getTransaction());
+                }
+                return new TransactionResult(true, 
+                    "Withdrawal successful. Amount: $" + amount, result.getTransaction());
+            }
+            
             // Create transaction
-            String transactionId = UUID.randomUUID().toString();
+            String transactionId = IdGenerator.nextIdString();
             Transaction transaction = new Transaction(
                 transactionId,
                 account.getAccountNumber(),
                 Transaction.TransactionType.WITHDRAWAL,
-                amount,
+                money,
                 "ATM Withdrawal"
             );
             
-            // Perform withdrawal
-            account.withdraw(amount);
-            transaction.setBalanceAfter(account.getBalance());
-            transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
+            // Debit and record under the account's stripe lock, as transfers do, so that the
+            // account's transactions are published in the order its balance changed
+            TransferEngine transferEngine = TransferEngine.getInstance();
+            int[] held = transferEngine.lockAll(account.getAccountNumber());
+            CompletableFuture<Long> durable;
+            try {
+                // Reserve against today's total, then check funds and debit in one atomic step
+                long now = System.currentTimeMillis();
+                if (!account.reserveDailySpend(money, now)) {
+                    return new TransactionResult(false, dailyLimitMessage(account, now), null);
+                }
+                Money balanceAfter = account.tryWithdraw(money);
+                if (balanceAfter == null) {
+                    account.releaseDailySpend(money, now);
+                    return new TransactionResult(false, "Insufficient funds", null);
+                }
+                transaction.setBalanceAfterMoney(balanceAfter);
+                transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
+                
+                // Save account state and transaction
+                cache.updateAccount(account);
+                durable = cache.addTransaction(transaction);
+            } finally {
+                transferEngine.unlockAll(held);
+            }
             
-            // Save transaction
-            cache.addTransaction(transaction);
+            // Report success only once both are durable; wait outside the lock
+            if (TransferEngine.awaitDurable(durable) != null) {
+                return unconfirmed("Withdrawal", transaction);
+            }
             
             return new TransactionResult(true, 
                 "Withdrawal successful. Amount: $" + amount, transaction);
@@ -92,10 +188,31 @@ public class ATMService {
         }
     }
     
+    /**
+     * Perform transfer operation at most once per client key; see withdraw(String, BigDecimal, String)
+     */
+    public TransactionResult transfer(String sessionId, String destinationAccount, BigDecimal amount,
+                                      String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return transfer(sessionId, destinationAccount, amount);
+        }
+        AuthenticationService.AuthenticatedUser authUser = 
+            AuthenticationService.getInstance().validateSession(sessionId);
+        if (authUser == null) {
+            return new TransactionResult(false, "Session expired. Please login again.", null);
+        }
+        
+        return idempotentRequests.execute(
+            requestKey("T", authUser, idempotencyKey), destinationAccount + ":" + amountFingerprint(amount),
+            () -> transfer(sessionId, destinationAccount, amount), ATMService::reusedKeyResult,
+            ATMService::tooManyRequestsResult);
+    }
+    
     /**
      * Perform transfer operation
      */
     public TransactionResult transfer(String sessionId, String destinationAccount, BigDecimal amount) {
+        EdtChecker.checkNotOnEdt("transfer");
         // Validate session
         AuthenticationService.AuthenticatedUser authUser = 
             AuthenticationService.getInstance().validateSession(sessionId);
@@ -104,19 +221,20 @@ public class ATMService {
         }
         
         // Validate amount
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+        Money money = toMoney(amount);
+        if (money == null || !money.isPositive()) {
             return new TransactionResult(false, "Invalid transfer amount", null);
         }
         
         // Check minimum transfer amount
-        if (amount.compareTo(new BigDecimal("1")) < 0) {
+        if (money.isLessThan(MIN_TRANSFER)) {
             return new TransactionResult(false, "Minimum transfer amount is $1", null);
         }
         
         Account sourceAccount = authUser.getAccount();
         
         // Check if source account can perform transfer
-        if (!sourceAccount.canWithdraw(amount)) {
+        if (!sourceAccount.canWithdraw(money)) {
             return new TransactionResult(false, "Insufficient funds", null);
         }
         
@@ -131,44 +249,37 @@ public class ATMService {
             return new TransactionResult(false, "Cannot transfer to the same account", null);
         }
         
+        if (!cache.isWritable()) {
+            return storageUnavailable();
+        }
+        
         try {
-            // Create transaction
-            String transactionId = UUID.randomUUID().toString();
-            Transaction transaction = new Transaction(
-                transactionId,
-                sourceAccount.getAccountNumber(),
-                Transaction.TransactionType.TRANSFER,
-                amount,
-                "Transfer to " + destinationAccount
-            );
-            transaction.setDestinationAccount(destinationAccount);
-            
-            // Perform transfer
-            sourceAccount.withdraw(amount);
-            destAccount.deposit(amount);
-            
-            transaction.setBalanceAfter(sourceAccount.getBalance());
-            transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
-            
-            // Save transaction
-            cache.addTransaction(transaction);
-            
-            // Create corresponding deposit transaction for destination account
-            String depositTransactionId = UUID.randomUUID().toString();
-            Transaction depositTransaction = new Transaction(
-                depositTransactionId,
-                destinationAccount,
-                Transaction.TransactionType.DEPOSIT,
-                amount,
-                "Transfer from " + sourceAccount.getAccountNumber()
-            );
-            depositTransaction.setBalanceAfter(destAccount.getBalance());
-            depositTransaction.setStatus(Transaction.TransactionStatus.COMPLETED);
-            cache.addTransaction(depositTransaction);
+            Transaction debit;
+            if (ledger != null) {
+                LedgerEngine.LedgerResult result = ledger.transfer(sourceAccount, destAccount, money).join();
+                if (!result.isSuccess()) {
+                    return new TransactionResult(false, result.getMessage(), null);
+                }
+                if (!result.isConfirmed()) {
+                    return unconfirmed("Transfer", result.getTransaction());
+                }
+                debit = result.getTransaction();
+            } else {
+                // Debit, credit and journal both legs atomically under the accounts' stripe locks
+                TransferEngine.TransferOutcome outcome = TransferEngine.getInstance()
+                    .transfer(sourceAccount, destAccount, money);
+                if (!outcome.isSuccess()) {
+                    return new TransactionResult(false, outcome.getMessage(), null);
+                }
+                if (!outcome.isConfirmed()) {
+                    return unconfirmed("Transfer", outcome.getDebit());
+                }
+                debit = outcome.getDebit();
+            }
             
             return new TransactionResult(true, 
                 "Transfer successful. Amount: $" + amount + " transferred to " + destinationAccount, 
-                transaction);
+                debit);
                 
         } catch (Exception e) {
             return new TransactionResult(false, 
@@ -177,9 +288,83 @@ public class ATMService {
     }
     
     /**
-     * Get account balance
+     * Transfer from the session's account to many destinations, e.g. a payroll run.
+     * The session is validated and the total checked against the balance once; all legs are then
+     * applied under one lock acquisition (or one ledger command) and journaled as one record.
+     * The result has one entry per instruction, in order.
+     */
+    public BatchTransferResult transferBatch(String sessionId, List<TransferInstruction> instructions,
+                                             TransferEngine.BatchMode mode) {
+        EdtChecker.checkNotOnEdt("transferBatch");
+        // Validate session
+        AuthenticationService.AuthenticatedUser authUser = 
+            AuthenticationService.getInstance().validateSession(sessionId);
+        if (authUser == null) {
+            return new BatchTransferResult(false, "Session expired. Please login again.", null);
+        }
+        
+        if (instructions == null || instructions.isEmpty() || instructions.size() > MAX_BATCH_TRANSFERS) {
+            return new BatchTransferResult(false, 
+                "A batch must contain between 1 and " + MAX_BATCH_TRANSFERS + " transfers", null);
+        }
+        
+        // Resolve every leg; an amount that fails validation is passed on as null and rejected per leg
+        Account sourceAccount = authUser.getAccount();
+        List<TransferEngine.BatchLeg> legs = new ArrayList<>(instructions.size());
+        Money total = Money.ZERO;
+        for (TransferInstruction instruction : instructions) {
+            Money money = toMoney(instruction.getAmount());
+            if (money != null && money.isLessThan(MIN_TRANSFER)) {
+                money = null;
+            }
+            if (money != null) {
+                total = total.plus(money);
+            }
+            String destinationAccount = instruction.getDestinationAccount();
+            legs.add(new TransferEngine.BatchLeg(
+                destinationAccount == null ? null : cache.getAccount(destinationAccount), money));
+        }
+        
+        // Check total funds up front; the engine checks again when it debits
+        if (mode == TransferEngine.BatchMode.ALL_OR_NOTHING && !sourceAccount.canWithdraw(total)) {
+            return new BatchTransferResult(false, "Insufficient funds for batch total of " + total.format(), null);
+        }
+        
+        if (!cache.isWritable()) {
+            return new BatchTransferResult(false, storageUnavailable().getMessage(), null);
+        }
+        
+        try {
+            TransferEngine.BatchOutcome outcome;
+            if (ledger != null) {
+                outcome = ledger.transferBatch(sourceAccount, legs, mode).join().getBatch();
+            } else {
+                outcome = TransferEngine.getInstance().transferBatch(sourceAccount, legs, mode);
+            }
+            
+            List<TransactionResult> results = new ArrayList<>(outcome.getLegs().size());
+            for (TransferEngine.LegOutcome leg : outcome.getLegs()) {
+                if (leg.isSuccess() && !outcome.isConfirmed()) {
+                    results.add(unconfirmed("Transfer", leg.getDebit()));
+                } else {
+                    results.add(new TransactionResult(leg.isSuccess(), leg.getMessage(), leg.getDebit()));
+                }
+            }
+            if (!outcome.isConfirmed()) {
+                return new BatchTransferResult(false, "Batch transfer " + UNCONFIRMED_MESSAGE, results, true);
+            }
+            return new BatchTransferResult(outcome.isSuccess(), outcome.getMessage(), results);
+        } catch (Exception e) {
+            return new BatchTransferResult(false, "Batch transfer failed: " + e.getMessage(), null);
+        }
+    }
+    
+    /**
+     * Get account balance. Read-only: use this for screen refreshes; a customer's
+     * balance inquiry goes through inquireBalance so it is recorded.
      */
     public BalanceResult getBalance(String sessionId) {
+        EdtChecker.checkNotOnEdt("getBalance");
         // Validate session
         AuthenticationService.AuthenticatedUser authUser = 
             AuthenticationService.getInstance().validateSession(sessionId);
@@ -187,28 +372,51 @@ public class ATMService {
             return new BalanceResult(false, "Session expired. Please login again.", null);
         }
         
-        Account account = authUser.getAccount();
+        return new BalanceResult(true, "Balance retrieved successfully", authUser.getAccount().getBalance());
+    }
+    
+    /**
+     * Customer-initiated balance inquiry: returns the balance like getBalance and records a
+     * BALANCE_INQUIRY transaction in the background, off the caller's path
+     */
+    public BalanceResult inquireBalance(String sessionId) {
+        EdtChecker.checkNotOnEdt("inquireBalance");
+        // Validate session
+        AuthenticationService.AuthenticatedUser authUser = 
+            AuthenticationService.getInstance().validateSession(sessionId);
+        if (authUser == null) {
+            return new BalanceResult(false, "Session expired. Please login again.", null);
+        }
         
-        // Create balance inquiry transaction
-        String transactionId = UUID.randomUUID().toString();
+        Account account = authUser.getAccount();
+        Money balance = account.getBalanceMoney();
+        CompletableFuture.runAsync(() -> recordBalanceInquiry(account, balance))
+            .exceptionally(e -> {
+                System.err.println("Failed to record balance inquiry: " + e.getMessage());
+                return null;
+            });
+        
+        return new BalanceResult(true, "Balance retrieved successfully", balance.toBigDecimal());
+    }
+    
+    private void recordBalanceInquiry(Account account, Money balance) {
         Transaction transaction = new Transaction(
-            transactionId,
+            IdGenerator.nextIdString(),
             account.getAccountNumber(),
             Transaction.TransactionType.BALANCE_INQUIRY,
-            BigDecimal.ZERO,
+            Money.ZERO,
             "Balance Inquiry"
         );
-        transaction.setBalanceAfter(account.getBalance());
+        transaction.setBalanceAfterMoney(balance);
         transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
         cache.addTransaction(transaction);
-        
-        return new BalanceResult(true, "Balance retrieved successfully", account.getBalance());
     }
     
     /**
      * Get transaction history
      */
     public TransactionHistoryResult getTransactionHistory(String sessionId, int limit) {
+        EdtChecker.checkNotOnEdt("getTransactionHistory");
         // Validate session
         AuthenticationService.AuthenticatedUser authUser = 
             AuthenticationService.getInstance().validateSession(sessionId);
@@ -222,10 +430,91 @@ public class ATMService {
         return new TransactionHistoryResult(true, "Transaction history retrieved", transactions);
     }
     
+    /**
+     * Look up one of the session account's transactions by the reference number on its receipt
+     */
+    public TransactionResult getTransactionByReference(String sessionId, String referenceNumber) {
+        EdtChecker.checkNotOnEdt("getTransactionByReference");
+        // Validate session
+        AuthenticationService.AuthenticatedUser authUser = 
+            AuthenticationService.getInstance().validateSession(sessionId);
+        if (authUser == null) {
+            return new TransactionResult(false, "Session expired. Please login again.", null);
+        }
+        
+        if (!ReferenceNumberSequencer.isValid(referenceNumber)) {
+            return new TransactionResult(false, "Invalid reference number", null);
+        }
+        
+        // Another account's reference reads the same as an unknown one
+        Transaction transaction = cache.getTransactionByReference(referenceNumber);
+        if (transaction == null
+                || !transaction.getAccountNumber().equals(authUser.getAccount().getAccountNumber())) {
+            return new TransactionResult(false, "Transaction not found", null);
+        }
+        return new TransactionResult(true, "Transaction found", transaction);
+    }
+    
+    /**
+     * Get the mini-statement from the read model: balance, the latest statement lines and
+     * today's totals. The result reports how far the read model may lag behind writes.
+     */
+    public MiniStatementResult getMiniStatement(String sessionId) {
+        EdtChecker.checkNotOnEdt("getMiniStatement");
+        // Validate session
+        AuthenticationService.AuthenticatedUser authUser = 
+            AuthenticationService.getInstance().validateSession(sessionId);
+        if (authUser == null) {
+            return new MiniStatementResult(false, "Session expired. Please login again.", null, 0);
+        }
+        
+        AccountReadModel.AccountView view = readModel.getView(authUser.getAccount().getAccountNumber());
+        if (view == null) {
+            return new MiniStatementResult(false, "Account not found", null, 0);
+        }
+        return new MiniStatementResult(true, "Mini statement retrieved", view,
+            TimeUnit.NANOSECONDS.toMillis(readModel.getStalenessNanos()));
+    }
+    
+    /**
+     * Get one page of the account statement for a time window.
+     * Pass the previous result's next cursor to continue; a null cursor starts at 'from'.
+     */
+    public TransactionPageResult getTransactionStatement(String sessionId, LocalDateTime from, LocalDateTime to,
+                                                         Transaction.TransactionType type, String cursor, int pageSize) {
+        EdtChecker.checkNotOnEdt("getTransactionStatement");
+        // Validate session
+        AuthenticationService.AuthenticatedUser authUser = 
+            AuthenticationService.getInstance().validateSession(sessionId);
+        if (authUser == null) {
+            return new TransactionPageResult(false, "Session expired. Please login again.", null, null);
+        }
+        
+        if (from != null && to != null && !from.isBefore(to)) {
+            return new TransactionPageResult(false, "Statement start must be before its end", null, null);
+        }
+        
+        if (pageSize <= 0 || pageSize > MAX_STATEMENT_PAGE_SIZE) {
+            return new TransactionPageResult(false, 
+                "Page size must be between 1 and " + MAX_STATEMENT_PAGE_SIZE, null, null);
+        }
+        
+        Account account = authUser.getAccount();
+        try {
+            DataCache.TransactionPage page = cache.queryTransactions(
+                account.getAccountNumber(), from, to, type, cursor, pageSize);
+            return new TransactionPageResult(true, "Statement retrieved", 
+                page.getTransactions(), page.getNextCursor());
+        } catch (IllegalArgumentException e) {
+            return new TransactionPageResult(false, e.getMessage(), null, null);
+        }
+    }
+    
     /**
      * Change PIN
      */
     public OperationResult changePin(String sessionId, String currentPin, String newPin) {
+        EdtChecker.checkNotOnEdt("changePin");
         // Validate session
         AuthenticationService.AuthenticatedUser authUser = 
             AuthenticationService.getInstance().validateSession(sessionId);
@@ -236,7 +525,7 @@ public class ATMService {
         Card card = authUser.getCard();
         
         // Validate current PIN
-        if (!card.getPin().equals(currentPin)) {
+        if (!card.matchesPin(currentPin)) {
             return new OperationResult(false, "Current PIN is incorrect");
         }
         
@@ -251,7 +540,8 @@ public class ATMService {
         }
         
         // Change PIN
-        card.setPin(newPin);
+        card.changePin(newPin);
+        cache.updateCard(card);
         
         return new OperationResult(true, "PIN changed successfully");
     }
@@ -261,16 +551,62 @@ public class ATMService {
         private boolean success;
         private String message;
         private Transaction transaction;
+        private boolean outcomeUnknown;
         
         public TransactionResult(boolean success, String message, Transaction transaction) {
+            this(success, message, transaction, false);
+        }
+        
+        public TransactionResult(boolean success, String message, Transaction transaction, boolean outcomeUnknown) {
             this.success = success;
             this.message = message;
             this.transaction = transaction;
+            this.outcomeUnknown = outcomeUnknown;
         }
         
         public boolean isSuccess() { return success; }
         public String getMessage() { return message; }
         public Transaction getTransaction() { return transaction; }
+        // True when the operation was applied but could not be confirmed as saved; check the balance before retrying
+        public boolean isOutcomeUnknown() { return outcomeUnknown; }
+    }
+    
+    // One destination of a batch transfer
+    public static class TransferInstruction {
+        private final String destinationAccount;
+        private final BigDecimal amount;
+        
+        public TransferInstruction(String destinationAccount, BigDecimal amount) {
+            this.destinationAccount = destinationAccount;
+            this.amount = amount;
+        }
+        
+        public String getDestinationAccount() { return destinationAccount; }
+        public BigDecimal getAmount() { return amount; }
+    }
+    
+    public static class BatchTransferResult {
+        private boolean success;
+        private String message;
+        private List<TransactionResult> results;
+        private boolean outcomeUnknown;
+        
+        public BatchTransferResult(boolean success, String message, List<TransactionResult> results) {
+            this(success, message, results, false);
+        }
+        
+        public BatchTransferResult(boolean success, String message, List<TransactionResult> results,
+                                   boolean outcomeUnknown) {
+            this.success = success;
+            this.message = message;
+            this.results = results == null ? Collections.<TransactionResult>emptyList() : results;
+            this.outcomeUnknown = outcomeUnknown;
+        }
+        
+        public boolean isSuccess() { return success; }
+        public String getMessage() { return message; }
+        public List<TransactionResult> getResults() { return results; }
+        public boolean isOutcomeUnknown() { return outcomeUnknown; }
     }
     
     public static class BalanceResult {
@@ -305,12 +641,54 @@ public class ATMService {
         public List<Transaction> getTransactions() { return transactions; }
     }
     
+    public static class MiniStatementResult {
+        private boolean success;
+        private String message;
+        private AccountReadModel.AccountView statement;
+        private long stalenessMillis;
+        
+        public MiniStatementResult(boolean success, String message, AccountReadModel.AccountView statement,
+                                   long stalenessMillis) {
+            this.success = success;
+            this.message = message;
+            this.statement = statement;
+            this.stalenessMillis = stalenessMillis;
+        }
+        
+        public boolean isSuccess() { return success; }
+        public String getMessage() { return message; }
+        public AccountReadModel.AccountView getStatement() { return statement; }
+        // Upper bound on how old the statement may be, at the time it was read
+        public long getStalenessMillis() { return stalenessMillis; }
+    }
+    
+    public static class TransactionPageResult {
+        private boolean success;
+        private String message;
+        private List<Transaction> transactions;
+        private String nextCursor;
+        
+        public TransactionPageResult(boolean success, String message, List<Transaction> transactions, String nextCursor) {
+            this.success = success;
+            this.message = message;
+            this.transactions = transactions;
+            this.nextCursor = nextCursor;
+        }
+        
+        public boolean isSuccess() { return success; }
+        public String getMessage() { return message; }
+        public List<Transaction> getTransactions() { return transactions; }
+        public String getNextCursor() { return nextCursor; }
+        public boolean hasMore() { return nextCursor != null; }
+    }
+    
     /**
      * Create a new bank account
      */
     public AccountCreationResult createAccount(String sessionId, String firstName, String lastName, 
                                              String phoneNumber, String email, Account.AccountType accountType, 
                                              BigDecimal initialDeposit, String pin) {
+        EdtChecker.checkNotOnEdt("createAccount");
         
         // Validate session for existing users, or allow guest creation
         boolean isLoggedInUser = false;
@@ -342,7 +720,8 @@ public class ATMService {
             return new AccountCreationResult(false, "PIN must be exactly 4 digits", null, null);
         }
         
-        if (initialDeposit == null || initialDeposit.compareTo(new BigDecimal("10.00")) < 0) {
+        Money deposit = toMoney(initialDeposit);
+        if (deposit == null || deposit.isLessThan(MIN_INITIAL_DEPOSIT)) {
             return new AccountCreationResult(false, "Minimum initial deposit is $10.00", null, null);
         }
         
@@ -350,6 +729,8 @@ public class ATMService {
             return new AccountCreationResult(false, "Account type must be selected", null, null);
         }
         
+        String claimedEmail = null;
+        String claimedBy = null;
         try {
             User user;
             String userId;
@@ -362,12 +743,12 @@ public class ATMService {
                 // Creating new user
                 userId = "USER" + String.format("%06d", (int)(Math.random() * 1000000));
                 
-                // Check if email already exists
-                for (User existingUser : cache.getAllUsers()) {
-                    if (existingUser.getEmail().equalsIgnoreCase(email.trim())) {
-                        return new AccountCreationResult(false, "An account with this email already exists", null, null);
-                    }
+                // Reserve the email; a concurrent sign-up with the same address loses here
+                if (!cache.claimEmail(email, userId)) {
+                    return new AccountCreationResult(false, "An account with this email already exists", null, null);
                 }
+                claimedEmail = email;
+                claimedBy = userId;
                 
                 user = new User(userId, firstName.trim(), lastName.trim(), 
                               phoneNumber.replaceAll("-", ""), email.trim());
@@ -381,18 +762,18 @@ public class ATMService {
             } while (cache.getAccount(accountNumber) != null);
             
             // Create new account
-            Account newAccount = new Account(accountNumber, userId, accountType, initialDeposit);
+            Account newAccount = new Account(accountNumber, userId, accountType, deposit);
             
             // Set appropriate daily limits based on account type
             switch (accountType) {
                 case CHECKING:
-                    newAccount.setDailyLimit(new BigDecimal("1000.00"));
+                    newAccount.setDailyLimitMoney(CHECKING_DAILY_LIMIT);
                     break;
                 case SAVINGS:
-                    newAccount.setDailyLimit(new BigDecimal("500.00"));
+                    newAccount.setDailyLimitMoney(SAVINGS_DAILY_LIMIT);
                     break;
                 case BUSINESS:
-                    newAccount.setDailyLimit(new BigDecimal("5000.00"));
+                    newAccount.setDailyLimitMoney(BUSINESS_DAILY_LIMIT);
                     break;
             }
             
@@ -411,16 +792,16 @@ public class ATMService {
             user.addCard(newCard);
             
             // Create initial deposit transaction
-            String transactionId = UUID.randomUUID().toString();
+            String transactionId = IdGenerator.nextIdString();
             Transaction initialTransaction = new Transaction(
                 transactionId,
                 accountNumber,
                 Transaction.TransactionType.DEPOSIT,
-                initialDeposit,
+                deposit,
                 "Initial Account Opening Deposit"
             );
             initialTransaction.setStatus(Transaction.TransactionStatus.COMPLETED);
-            initialTransaction.setBalanceAfter(initialDeposit);
+            initialTransaction.setBalanceAfterMoney(deposit);
             cache.addTransaction(initialTransaction);
             
             return new AccountCreationResult(true, 
@@ -428,11 +809,61 @@ public class ATMService {
                 newAccount, newCard);
                 
         } catch (Exception e) {
+            if (claimedEmail != null) {
+                cache.releaseEmail(claimedEmail, claimedBy);
+            }
             return new AccountCreationResult(false, 
                 "Account creation failed: " + e.getMessage(), null, null);
         }
     }
     
+    static String dailyLimitMessage(Account account, long nowMillis) {
+        return "Amount exceeds remaining daily limit of $" + account.getRemainingDailyLimit(nowMillis)
+            + " (daily limit $" + account.getDailyLimitMoney() + ")";
+    }
+    
+    // Client keys are only unique per card, so the card and operation are part of the cache key
+    private static String requestKey(String operation, AuthenticationService.AuthenticatedUser authUser,
+                                     String idempotencyKey) {
+        return authUser.getCard().getCardNumber() + ":" + operation + ":" + idempotencyKey;
+    }
+    
+    // Equal amounts written differently (10 and 10.00) are the same request
+    private static String amountFingerprint(BigDecimal amount) {
+        return amount == null ? "null" : amount.stripTrailingZeros().toPlainString();
+    }
+    
+    // Nothing was applied: the journal has failed, so no new debit could be recorded
+    private static TransactionResult storageUnavailable() {
+        return new TransactionResult(false, "Transactions are temporarily unavailable. Please try again later.", null);
+    }
+    
+    // The money has moved in memory but the journal did not confirm it; this is not a failure to retry blindly
+    private static TransactionResult unconfirmed(String operation, Transaction transaction) {
+        return new TransactionResult(false, operation + " " + UNCONFIRMED_MESSAGE, transaction, true);
+    }
+    
+    private static TransactionResult reusedKeyResult() {
+        return new TransactionResult(false, "Request key was already used for a different request", null);
+    }
+    
+    // Every remembered request is still live, so a new key cannot be guaranteed at-most-once
+    private static TransactionResult tooManyRequestsResult() {
+        return new TransactionResult(false, "Too many requests in progress. Please try again shortly.", null);
+    }
+    
+    // Converts an amount at the API edge; null if it is missing, has fractions of a cent or is out of range
+    private static Money toMoney(BigDecimal amount) {
+        if (amount == null) {
+            return null;
+        }
+        try {
+            return Money.of(amount);
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+    
     private String generateAccountNumber() {
         // Generate 16-digit account number starting with 1234
         StringBuilder sb = new StringBuilder("1234");
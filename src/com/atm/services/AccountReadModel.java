@@ -0,0 +1,412 @@
+package com.atm.services;
+
+import com.atm.models.Account;
+import com.atm.models.Money;
+import com.atm.models.Transaction;
+import com.atm.utils.DataCache;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Query-side model of each account: balance, the last statement lines already formatted,
+ * and today's totals.
+ *
+ * DataCache publishes every stored transaction to a queue; one applier thread folds the
+ * events into immutable per-account views. Queries read a view from a concurrent map and
+ * never touch the Account objects or indexes that writers mutate. A view lags the write
+ * side by at most getStalenessNanos(), the age of the oldest event not yet applied.
+ *
+ * Only the applier writes views. It seeds an account's first view from the write side with
+ * stores paused, and from then on takes the balance from the events: each account's balance
+ * changes are published in the order they were made, so the latest event holds the balance.
+ * A query that cannot get a seed from the applier in time builds the view itself, unstored.
+ */
+public class AccountReadModel {
+    public static final int STATEMENT_LINES = 10;
+    
+    private static final long SEED_WAIT_MILLIS = 1_000;
+    
+    private static final DateTimeFormatter LINE_DATE_FORMAT = DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm");
+    
+    private static AccountReadModel instance;
+    
+    private final DataCache cache;
+    private final Map<String, AccountView> views = new ConcurrentHashMap<>();
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final AtomicLong published = new AtomicLong();
+    private volatile long applied;
+    private volatile long lastLagNanos;
+    private volatile long maxLagNanos;
+    private volatile boolean idle;
+    private final Thread applierThread;
+    
+    private AccountReadModel() {
+        this.cache = DataCache.getInstance();
+        // Subscribe before seeding so no transaction falls between the two; events a seed already covers are skipped
+        cache.addTransactionListener(this::publish);
+        cache.addClearListener(this::publishClear);
+        this.applierThread = new Thread(this::run, "read-model");
+        applierThread.setDaemon(true);
+        applierThread.start();
+    }
+    
+    public static synchronized AccountReadModel getInstance() {
+        if (instance == null) {
+            instance = new AccountReadModel();
+        }
+        return instance;
+    }
+    
+    /**
+     * Returns the account's current view, or null if the account does not exist.
+     * An account not seen by the applier yet is seeded on first query; the caller waits for
+     * the applier to get to it, for at most SEED_WAIT_MILLIS.
+     */
+    public AccountView getView(String accountNumber) {
+        AccountView view = views.get(accountNumber);
+        if (view != null) {
+            return view;
+        }
+        Account account = cache.getAccount(accountNumber);
+        if (account == null) {
+            return null;
+        }
+        if (applierThread.isAlive()) {
+            CompletableFuture<AccountView> seeded = new CompletableFuture<>();
+            events.offer(new Event(accountNumber, seeded, System.nanoTime()));
+            wakeApplier();
+            try {
+                return seeded.get(SEED_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                // The applier is behind or could not seed it; fall back to the write side
+            }
+        }
+        return buildView(account);
+    }
+    
+    // Staleness metrics
+    // Age of the oldest event not yet applied: every view reflects all writes older than this
+    public long getStalenessNanos() {
+        Event oldest = events.peek();
+        return oldest == null ? 0 : Math.max(0, System.nanoTime() - oldest.publishedAt);
+    }
+    
+    public long getBacklog() {
+        return published.get() - applied;
+    }
+    
+    public long getLastLagNanos() { return lastLagNanos; }
+    public long getMaxLagNanos() { return maxLagNanos; }
+    public long getAppliedCount() { return applied; }
+    
+    // Called on the writer's thread while it stores the transaction: numbers the event and
+    // enqueues it lock-free, plus an unpark if the applier is idle
+    private void publish(Transaction transaction) {
+        long sequence = published.incrementAndGet();
+        events.offer(new Event(transaction, sequence, System.nanoTime()));
+        wakeApplier();
+    }
+    
+    // Called by clearAll under the index write lock: the views go once earlier events are applied
+    private void publishClear() {
+        events.offer(Event.clear(System.nanoTime()));
+        wakeApplier();
+    }
+    
+    private void wakeApplier() {
+        if (idle) {
+            LockSupport.unpark(applierThread);
+        }
+    }
+    
+    private void run() {
+        cache.forEachAccount(account -> {
+            if (!views.containsKey(account.getAccountNumber())) {
+                try {
+                    seed(account);
+                } catch (RuntimeException e) {
+                    // Left unseeded; the first query or event for it tries again
+                    System.err.println("Read model failed to seed account "
+                        + account.getAccountNumber() + ": " + e.getMessage());
+                }
+            }
+        });
+        while (true) {
+            Event event = events.poll();
+            if (event == null) {
+                // Publishers enqueue before reading idle and we set idle before re-checking, so
+                // either we see the event or its publisher sees idle and unparks us
+                idle = true;
+                if (events.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                continue;
+            }
+            if (event.clear) {
+                views.clear();
+                continue;
+            }
+            if (event.transaction == null) {
+                seedRequested(event);
+                continue;
+            }
+            try {
+                apply(event.transaction, event.sequence);
+            } catch (RuntimeException e) {
+                System.err.println("Read model failed to apply transaction "
+                    + event.transaction.getTransactionId() + ": " + e.getMessage());
+            }
+            long lag = System.nanoTime() - event.publishedAt;
+            lastLagNanos = lag;
+            if (lag > maxLagNanos) {
+                maxLagNanos = lag;
+            }
+            applied++;
+        }
+    }
+    
+    // Applier thread: answers a query for an account that had no view yet
+    private void seedRequested(Event request) {
+        try {
+            AccountView view = views.get(request.accountNumber);
+            if (view == null) {
+                Account account = cache.getAccount(request.accountNumber);
+                view = account != null ? seed(account) : null;
+            }
+            request.seeded.complete(view);
+        } catch (RuntimeException e) {
+            request.seeded.completeExceptionally(e);
+        }
+    }
+    
+    // Applier thread only: stores an account's first view
+    private AccountView seed(Account account) {
+        AccountView view = buildView(account);
+        views.put(account.getAccountNumber(), view);
+        return view;
+    }
+    
+    /**
+     * Builds an account's view from the write side. Stores are paused meanwhile, so the view
+     * reflects exactly the events numbered up to the published count read here, and those
+     * events are skipped when they are dequeued.
+     */
+    private AccountView buildView(Account account) {
+        return cache.whileStoresPaused(() -> {
+            String accountNumber = account.getAccountNumber();
+            long seededThrough = published.get();
+            List<Transaction> recent = cache.getRecentTransactions(accountNumber, STATEMENT_LINES);
+            StatementLine[] lines = new StatementLine[recent.size()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = StatementLine.of(recent.get(i));
+            }
+            
+            // Today's totals: only the transactions since the start of the day are visited
+            LocalDate today = LocalDate.now();
+            Money[] totals = {Money.ZERO, Money.ZERO}; // withdrawn, deposited
+            cache.forEachTransactionSince(accountNumber, today.atStartOfDay(), transaction -> {
+                if (isDebit(transaction.getType())) {
+                    totals[0] = totals[0].plus(transaction.getAmountMoney());
+                } else if (isCredit(transaction.getType())) {
+                    totals[1] = totals[1].plus(transaction.getAmountMoney());
+                }
+            });
+            return new AccountView(accountNumber, account.getBalanceMoney(), lines, today,
+                totals[0], totals[1], seededThrough, System.nanoTime());
+        });
+    }
+    
+    private void apply(Transaction transaction, long sequence) {
+        String accountNumber = transaction.getAccountNumber();
+        AccountView current = views.get(accountNumber);
+        if (current == null) {
+            Account account = cache.getAccount(accountNumber);
+            if (account == null) {
+                return;
+            }
+            current = seed(account);
+        }
+        if (sequence <= current.seededThrough || current.contains(transaction.getTransactionId())) {
+            return; // already part of the seeded view, or a re-stored transaction
+        }
+        
+        // Writers publish an account's balance changes in the order they make them (under its
+        // stripe lock, or on the ledger thread), so the latest change carries the current balance.
+        // Balance inquiries record a balance read outside that order and do not move it.
+        Money balance = current.balance;
+        if ((isDebit(transaction.getType()) || isCredit(transaction.getType()))
+                && transaction.getBalanceAfterMoney() != null) {
+            balance = transaction.getBalanceAfterMoney();
+        }
+        
+        StatementLine[] lines = new StatementLine[Math.min(current.lines.length + 1, STATEMENT_LINES)];
+        lines[0] = StatementLine.of(transaction);
+        System.arraycopy(current.lines, 0, lines, 1, lines.length - 1);
+        
+        LocalDate day = transaction.getTimestamp().toLocalDate();
+        Money withdrawn = current.withdrawnToday;
+        Money deposited = current.depositedToday;
+        if (day.isAfter(current.day)) {
+            withdrawn = Money.ZERO;
+            deposited = Money.ZERO;
+        } else if (day.isBefore(current.day)) {
+            day = current.day; // a late event from an earlier day does not count towards today
+        }
+        if (day.equals(transaction.getTimestamp().toLocalDate())) {
+            if (isDebit(transaction.getType())) {
+                withdrawn = withdrawn.plus(transaction.getAmountMoney());
+            } else if (isCredit(transaction.getType())) {
+                deposited = deposited.plus(transaction.getAmountMoney());
+            }
+        }
+        views.put(accountNumber, new AccountView(accountNumber, balance, lines, day, withdrawn, deposited,
+            current.seededThrough, System.nanoTime()));
+    }
+    
+    private static boolean isDebit(Transaction.TransactionType type) {
+        return type == Transaction.TransactionType.WITHDRAWAL || type == Transaction.TransactionType.TRANSFER;
+    }
+    
+    private static boolean isCredit(Transaction.TransactionType type) {
+        return type == Transaction.TransactionType.DEPOSIT;
+    }
+    
+    // A published transaction, a query's request to seed an account (transaction is null),
+    // or a clearAll (clear is set)
+    private static final class Event {
+        private final Transaction transaction;
+        private final long sequence;
+        private final String accountNumber;
+        private final CompletableFuture<AccountView> seeded;
+        private final boolean clear;
+        private final long publishedAt;
+        
+        Event(Transaction transaction, long sequence, long publishedAt) {
+            this.transaction = transaction;
+            this.sequence = sequence;
+            this.accountNumber = null;
+            this.seeded = null;
+            this.clear = false;
+            this.publishedAt = publishedAt;
+        }
+        
+        Event(String accountNumber, CompletableFuture<AccountView> seeded, long publishedAt) {
+            this.transaction = null;
+            this.sequence = 0;
+            this.accountNumber = accountNumber;
+            this.seeded = seeded;
+            this.clear = false;
+            this.publishedAt = publishedAt;
+        }
+        
+        private Event(long publishedAt) {
+            this.transaction = null;
+            this.sequence = 0;
+            this.accountNumber = null;
+            this.seeded = null;
+            this.clear = true;
+            this.publishedAt = publishedAt;
+        }
+        
+        static Event clear(long publishedAt) {
+            return new Event(publishedAt);
+        }
+    }
+    
+    /**
+     * Immutable snapshot of one account; safe to hold and read from any thread
+     */
+    public static final class AccountView {
+        private final String accountNumber;
+        private final Money balance;
+        private final StatementLine[] lines; // newest first
+        private final LocalDate day;
+        private final Money withdrawnToday;
+        private final Money depositedToday;
+        private final long seededThrough; // events up to this number were in the seed
+        private final long updatedAtNanos;
+        
+        private AccountView(String accountNumber, Money balance, StatementLine[] lines, LocalDate day,
+                            Money withdrawnToday, Money depositedToday, long seededThrough, long updatedAtNanos) {
+            this.accountNumber = accountNumber;
+            this.balance = balance;
+            this.lines = lines;
+            this.day = day;
+            this.withdrawnToday = withdrawnToday;
+            this.depositedToday = depositedToday;
+            this.seededThrough = seededThrough;
+            this.updatedAtNanos = updatedAtNanos;
+        }
+        
+        private boolean contains(String transactionId) {
+            for (StatementLine line : lines) {
+                if (line.transactionId.equals(transactionId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        public String getAccountNumber() { return accountNumber; }
+        public Money getBalance() { return balance; }
+        public List<StatementLine> getStatementLines() { return Collections.unmodifiableList(Arrays.asList(lines)); }
+        public long getUpdatedAtNanos() { return updatedAtNanos; }
+        
+        // Totals for the day of the latest transaction; zero once that day is over
+        public Money getWithdrawnToday() { return LocalDate.now().equals(day) ? withdrawnToday : Money.ZERO; }
+        public Money getDepositedToday() { return LocalDate.now().equals(day) ? depositedToday : Money.ZERO; }
+    }
+    
+    /**
+     * One mini-statement line, formatted once when the transaction is applied
+     */
+    public static final class StatementLine {
+        private final String transactionId;
+        private final Transaction.TransactionType type;
+        private final String date;
+        private final String description;
+        private final String amount;
+        
+        private StatementLine(String transactionId, Transaction.TransactionType type, String date,
+                              String description, String amount) {
+            this.transactionId = transactionId;
+            this.type = type;
+            this.date = date;
+            this.description = description;
+            this.amount = amount;
+        }
+        
+        static StatementLine of(Transaction transaction) {
+            String amount = transaction.getAmountMoney().format();
+            if (isDebit(transaction.getType())) {
+                amount = "-" + amount;
+            } else if (isCredit(transaction.getType())) {
+                amount = "+" + amount;
+            }
+            return new StatementLine(transaction.getTransactionId(), transaction.getType(),
+                transaction.getTimestamp().format(LINE_DATE_FORMAT), transaction.getDescription(), amount);
+        }
+        
+        public Transaction.TransactionType getType() { return type; }
+        public String getDate() { return date; }
+        public String getDescription() { return description; }
+        public String getAmount() { return amount; }
+    }
+}
@@ -0,0 +1,165 @@
+package com.atm.services;
+
+import com.atm.models.Account;
+import com.atm.models.Transaction;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous facade over ATMService.
+ *
+ * Each call runs on a shared executor and returns a future, so callers such as the Swing
+ * event thread never wait on journal fsyncs, and one terminal can have many requests in
+ * flight. Futures complete exceptionally with a TimeoutException once the timeout passes.
+ * A timeout does not cancel the operation itself, so a timed-out withdrawal or transfer
+ * should be retried with the same idempotency key.
+ *
+ * The executor uses virtual threads when the runtime has them, unless
+ * -Datm.async.executor=pool; the pool size is -Datm.async.threads. The default timeout
+ * is -Datm.async.timeout.ms; withTimeout and withExecutor give facades with different ones.
+ */
+public class AsyncATMService {
+    private static final long DEFAULT_TIMEOUT_MILLIS = Long.getLong("atm.async.timeout.ms", 30_000);
+    
+    private static AsyncATMService instance;
+    
+    private final ATMService service;
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+    
+    private AsyncATMService(ATMService service, ExecutorService executor, long timeoutMillis) {
+        this.service = service;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    public static synchronized AsyncATMService getInstance() {
+        if (instance == null) {
+            instance = new AsyncATMService(ATMService.getInstance(), createExecutor(), DEFAULT_TIMEOUT_MILLIS);
+        }
+        return instance;
+    }
+    
+    /**
+     * Returns a facade sharing this one's executor whose calls time out after the given duration
+     */
+    public AsyncATMService withTimeout(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        return new AsyncATMService(service, executor, timeout.toMillis());
+    }
+    
+    /**
+     * Returns a facade with this one's timeout whose calls run on the given executor
+     */
+    public AsyncATMService withExecutor(ExecutorService executor) {
+        return new AsyncATMService(service, executor, timeoutMillis);
+    }
+    
+    public CompletableFuture<AuthenticationService.AuthenticationResult> authenticate(String cardNumber, String pin) {
+        return submit(() -> AuthenticationService.getInstance().authenticate(cardNumber, pin));
+    }
+    
+    public CompletableFuture<Void> logout(String sessionId) {
+        return submit(() -> {
+            AuthenticationService.getInstance().logout(sessionId);
+            return null;
+        });
+    }
+    
+    public CompletableFuture<ATMService.TransactionResult> withdraw(String sessionId, BigDecimal amount) {
+        return submit(() -> service.withdraw(sessionId, amount));
+    }
+    
+    public CompletableFuture<ATMService.TransactionResult> withdraw(String sessionId, BigDecimal amount,
+                                                                    String idempotencyKey) {
+        return submit(() -> service.withdraw(sessionId, amount, idempotencyKey));
+    }
+    
+    public CompletableFuture<ATMService.TransactionResult> transfer(String sessionId, String destinationAccount,
+                                                                    BigDecimal amount) {
+        return submit(() -> service.transfer(sessionId, destinationAccount, amount));
+    }
+    
+    public CompletableFuture<ATMService.TransactionResult> transfer(String sessionId, String destinationAccount,
+                                                                    BigDecimal amount, String idempotencyKey) {
+        return submit(() -> service.transfer(sessionId, destinationAccount, amount, idempotencyKey));
+    }
+    
+    public CompletableFuture<ATMService.BatchTransferResult> transferBatch(
+            String sessionId, List<ATMService.TransferInstruction> instructions, TransferEngine.BatchMode mode) {
+        return submit(() -> service.transferBatch(sessionId, instructions, mode));
+    }
+    
+    public CompletableFuture<ATMService.BalanceResult> getBalance(String sessionId) {
+        return submit(() -> service.getBalance(sessionId));
+    }
+    
+    public CompletableFuture<ATMService.BalanceResult> inquireBalance(String sessionId) {
+        return submit(() -> service.inquireBalance(sessionId));
+    }
+    
+    public CompletableFuture<ATMService.TransactionHistoryResult> getTransactionHistory(String sessionId, int limit) {
+        return submit(() -> service.getTransactionHistory(sessionId, limit));
+    }
+    
+    public CompletableFuture<ATMService.TransactionResult> getTransactionByReference(String sessionId,
+                                                                                     String referenceNumber) {
+        return submit(() -> service.getTransactionByReference(sessionId, referenceNumber));
+    }
+    
+    public CompletableFuture<ATMService.MiniStatementResult> getMiniStatement(String sessionId) {
+        return submit(() -> service.getMiniStatement(sessionId));
+    }
+    
+    public CompletableFuture<ATMService.TransactionPageResult> getTransactionStatement(
+            String sessionId, LocalDateTime from, LocalDateTime to, Transaction.TransactionType type,
+            String cursor, int pageSize) {
+        return submit(() -> service.getTransactionStatement(sessionId, from, to, type, cursor, pageSize));
+    }
+    
+    public CompletableFuture<ATMService.OperationResult> changePin(String sessionId, String currentPin,
+                                                                   String newPin) {
+        return submit(() -> service.changePin(sessionId, currentPin, newPin));
+    }
+    
+    public CompletableFuture<ATMService.AccountCreationResult> createAccount(
+            String sessionId, String firstName, String lastName, String phoneNumber, String email,
+            Account.AccountType accountType, BigDecimal initialDeposit, String pin) {
+        return submit(() -> service.createAccount(sessionId, firstName, lastName, phoneNumber, email,
+            accountType, initialDeposit, pin));
+    }
+    
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor).orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    // Virtual threads suit calls that mostly wait on fsyncs; they are looked up reflectively
+    // so the application still runs on runtimes without them
+    private static ExecutorService createExecutor() {
+        if (!"pool".equalsIgnoreCase(System.getProperty("atm.async.executor"))) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Not available on this runtime; fall back to a platform thread pool
+            }
+        }
+        int threads = Integer.getInteger("atm.async.threads", Runtime.getRuntime().availableProcessors() * 4);
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "atm-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
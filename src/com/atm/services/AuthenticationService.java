@@ -4,6 +4,7 @@ import com.atm.models.Card;
 import com.atm.models.Account;
 import com.atm.models.User;
 import com.atm.utils.DataCache;
+import com.atm.utils.EdtChecker;
 
 /**
  * Service for handling authentication and authorization
@@ -30,9 +31,7 @@ public class AuthenticationService {
      * @return AuthenticationResult containing success status and card info
      */
     public AuthenticationResult authenticate(String cardNumber, String pin) {
-        // Clean up expired sessions first
-        cache.cleanExpiredSessions();
-        
+        EdtChecker.checkNotOnEdt("authenticate");
         // Validate input
         if (cardNumber == null || pin == null || cardNumber.trim().isEmpty() || pin.trim().isEmpty()) {
             return new AuthenticationResult(false, "Invalid card number or PIN", null);
@@ -67,7 +66,12 @@ public class AuthenticationService {
         }
         
         // Validate PIN
-        if (!card.validatePin(pin)) {
+        int attemptsBefore = card.getFailedPinAttempts();
+        boolean pinValid = card.validatePin(pin);
+        if (card.getFailedPinAttempts() != attemptsBefore) {
+            cache.updateCard(card);
+        }
+        if (!pinValid) {
             int remainingAttempts = 3 - card.getFailedPinAttempts();
             if (remainingAttempts <= 0) {
                 return new AuthenticationResult(false, "Card has been blocked due to multiple failed attempts", null);
@@ -88,7 +92,7 @@ public class AuthenticationService {
             return new AuthenticationResult(false, "User not found", null);
         }
         
-        // Create session
+        // Create session; the first validateSession resolves and caches its context
         String sessionId = generateSessionId();
         cache.createSession(sessionId, cardNumber);
         
@@ -97,7 +101,10 @@ public class AuthenticationService {
     }
     
     /**
-     * Validates session and returns authenticated user info
+     * Validates session and returns authenticated user info.
+     * The card, account and user are resolved once and cached on the session until one of
+     * those three is replaced or changed; changes to other cards, accounts or users leave it
+     * alone. A valid session with a current context is validated without allocating.
      */
     public AuthenticatedUser validateSession(String sessionId) {
         if (sessionId == null) {
@@ -115,23 +122,51 @@ public class AuthenticationService {
         // Update last activity
         session.updateLastActivity();
         
-        // Get user data
+        AuthenticatedUser context = session.getContext();
+        if (context != null && isCurrent(context)) {
+            return context;
+        }
+        
+        // Get user data; each version is read before its lookup, so a change racing with the
+        // lookup leaves the new context already stale rather than wrongly current
+        long epoch = cache.getSessionEpoch();
+        long cardVersion = cache.getCardVersion(session.getCardNumber());
         Card card = cache.getCard(session.getCardNumber());
+        if (card == null) {
+            return null;
+        }
+        long accountVersion = cache.getAccountVersion(card.getAccountNumber());
         Account account = cache.getAccount(card.getAccountNumber());
+        long userVersion = cache.getUserVersion(card.getUserId());
         User user = cache.getUser(card.getUserId());
+        if (account == null || user == null) {
+            return null;
+        }
         
-        return new AuthenticatedUser(card, account, user, sessionId);
+        context = new AuthenticatedUser(card, account, user, sessionId,
+            epoch, cardVersion, accountVersion, userVersion);
+        session.setContext(context);
+        return context;
     }
     
     /**
      * Logs out user by removing session
      */
     public void logout(String sessionId) {
+        EdtChecker.checkNotOnEdt("logout");
         if (sessionId != null) {
             cache.removeSession(sessionId);
         }
     }
     
+    private boolean isCurrent(AuthenticatedUser context) {
+        Card card = context.card;
+        return context.epoch == cache.getSessionEpoch()
+            && context.cardVersion == cache.getCardVersion(card.getCardNumber())
+            && context.accountVersion == cache.getAccountVersion(card.getAccountNumber())
+            && context.userVersion == cache.getUserVersion(card.getUserId());
+    }
+    
     private boolean isValidCardNumber(String cardNumber) {
         // Card number should be 16 digits
         return cardNumber.matches("\\d{16}");
@@ -143,7 +178,7 @@ public class AuthenticationService {
     }
     
     private String generateSessionId() {
-        return "SESSION_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 10000);
+        return SessionTokenGenerator.nextToken();
     }
     
     // Result classes
@@ -163,17 +198,32 @@ public class AuthenticationService {
         public AuthenticatedUser getAuthenticatedUser() { return authenticatedUser; }
     }
     
-    public static class AuthenticatedUser {
-        private Card card;
-        private Account account;
-        private User user;
-        private String sessionId;
+    // Immutable, so one instance can be cached on the session and shared by concurrent calls
+    public static final class AuthenticatedUser {
+        private final Card card;
+        private final Account account;
+        private final User user;
+        private final String sessionId;
+        // Versions it was resolved at; -1 if never cached
+        private final long epoch;
+        private final long cardVersion;
+        private final long accountVersion;
+        private final long userVersion;
         
         public AuthenticatedUser(Card card, Account account, User user, String sessionId) {
+            this(card, account, user, sessionId, -1, -1, -1, -1);
+        }
+        
+        AuthenticatedUser(Card card, Account account, User user, String sessionId,
+                          long epoch, long cardVersion, long accountVersion, long userVersion) {
             this.card = card;
             this.account = account;
             this.user = user;
             this.sessionId = sessionId;
+            this.epoch = epoch;
+            this.cardVersion = cardVersion;
+            this.accountVersion = accountVersion;
+            this.userVersion = userVersion;
         }
         
         public Card getCard() { return card; }
@@ -0,0 +1,298 @@
+package com.atm.services;
+
+import com.atm.models.Account;
+import com.atm.models.Money;
+import com.atm.models.Transaction;
+import com.atm.utils.DataCache;
+import com.atm.utils.IdGenerator;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional single-writer ledger: every balance mutation is executed by one ledger thread.
+ *
+ * Callers claim a sequence number, fill the matching slot of a pre-allocated ring of
+ * commands and publish it; the ledger thread consumes slots strictly in sequence order.
+ * Balances are therefore only ever written by one thread, no locks are taken, and the
+ * journal receives mutations in one total order. Results are returned through futures that
+ * complete once the mutation's journal record is durable.
+ *
+ * Enabled with -Datm.ledger.mode=single-writer; otherwise ATMService uses the locking path.
+ */
+public class LedgerEngine {
+    public static final String MODE_PROPERTY = "atm.ledger.mode";
+    public static final String SINGLE_WRITER_MODE = "single-writer";
+    
+    private static final int DEFAULT_CAPACITY = 1 << 14; // power of two
+    private static final int SPINS_BEFORE_PARK = 100;
+    
+    private enum Operation {
+        WITHDRAW, TRANSFER, TRANSFER_BATCH
+    }
+    
+    private static LedgerEngine instance;
+    
+    private final Command[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long consumed = -1; // written only by the ledger thread
+    private volatile boolean idle;
+    private final Thread ledgerThread;
+    private final DataCache cache;
+    private final TransferEngine transferEngine;
+    
+    private LedgerEngine(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two");
+        }
+        this.cache = DataCache.getInstance();
+        this.transferEngine = TransferEngine.getInstance();
+        this.ring = new Command[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Command();
+        }
+        this.ledgerThread = new Thread(this::run, "ledger");
+        ledgerThread.setDaemon(true);
+        ledgerThread.start();
+    }
+    
+    public static boolean isEnabled() {
+        return SINGLE_WRITER_MODE.equalsIgnoreCase(System.getProperty(MODE_PROPERTY));
+    }
+    
+    public static synchronized LedgerEngine getInstance() {
+        if (instance == null) {
+            instance = new LedgerEngine(DEFAULT_CAPACITY);
+        }
+        return instance;
+    }
+    
+    // Commands
+    public CompletableFuture<LedgerResult> withdraw(Account account, Money amount) {
+        return submit(Operation.WITHDRAW, account, null, amount, null, null);
+    }
+    
+    public CompletableFuture<LedgerResult> transfer(Account source, Account destination, Money amount) {
+        return submit(Operation.TRANSFER, source, destination, amount, null, null);
+    }
+    
+    // The whole batch is one command, so its legs are applied and journaled together
+    public CompletableFuture<LedgerResult> transferBatch(Account source, List<TransferEngine.BatchLeg> legs,
+                                                         TransferEngine.BatchMode mode) {
+        return submit(Operation.TRANSFER_BATCH, source, null, null, legs, mode);
+    }
+    
+    private CompletableFuture<LedgerResult> submit(Operation operation, Account account, Account destination,
+                                                   Money amount, List<TransferEngine.BatchLeg> legs,
+                                                   TransferEngine.BatchMode mode) {
+        CompletableFuture<LedgerResult> result = new CompletableFuture<>();
+        long sequence = claimed.incrementAndGet();
+        
+        // Wait for the ledger thread to free this slot when the ring is full; yield rather
+        // than spin so the ledger thread gets the core when there are fewer cores than callers
+        while (sequence - ring.length > consumed) {
+            Thread.yield();
+        }
+        
+        Command command = ring[(int) sequence & mask];
+        command.operation = operation;
+        command.account = account;
+        command.destination = destination;
+        command.amount = amount;
+        command.legs = legs;
+        command.mode = mode;
+        command.result = result;
+        command.published = sequence; // volatile write publishes the fields above
+        
+        if (idle) {
+            LockSupport.unpark(ledgerThread);
+        }
+        return result;
+    }
+    
+    // Ledger thread: consumes commands in sequence order
+    private void run() {
+        long next = 0;
+        int spins = 0;
+        while (true) {
+            Command command = ring[(int) next & mask];
+            if (command.published != next) {
+                if (++spins < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    // Producers publish before reading idle and we set idle before re-checking, so
+                    // either we see the command or its producer sees idle and unparks us
+                    idle = true;
+                    if (command.published != next) {
+                        LockSupport.park(this);
+                    }
+                    idle = false;
+                }
+                continue;
+            }
+            spins = 0;
+            
+            Operation operation = command.operation;
+            Account account = command.account;
+            Account destination = command.destination;
+            Money amount = command.amount;
+            List<TransferEngine.BatchLeg> legs = command.legs;
+            TransferEngine.BatchMode mode = command.mode;
+            CompletableFuture<LedgerResult> result = command.result;
+            command.account = null;
+            command.destination = null;
+            command.legs = null;
+            command.result = null;
+            consumed = next++; // releases the slot to producers
+            
+            try {
+                if (operation == Operation.TRANSFER_BATCH) {
+                    executeBatch(account, legs, mode, result);
+                } else {
+                    execute(operation, account, destination, amount, result);
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+    
+    private void execute(Operation operation, Account account, Account destination, Money amount,
+                         CompletableFuture<LedgerResult> result) {
+        switch (operation) {
+            case WITHDRAW: {
+                long now = System.currentTimeMillis();
+                if (!account.reserveDailySpend(amount, now)) {
+                    result.complete(LedgerResult.failed(ATMService.dailyLimitMessage(account, now)));
+                    return;
+                }
+                Money balanceAfter = account.tryWithdraw(amount);
+                if (balanceAfter == null) {
+                    account.releaseDailySpend(amount, now);
+                    result.complete(LedgerResult.failed("Insufficient funds"));
+                    return;
+                }
+                Transaction transaction = newTransaction(account, Transaction.TransactionType.WITHDRAWAL,
+                    amount, "ATM Withdrawal", balanceAfter);
+                cache.updateAccount(account);
+                complete(result, cache.addTransaction(transaction), LedgerResult.succeeded(transaction, null));
+                break;
+            }
+            case TRANSFER: {
+                // The ledger thread owns every balance, so the transfer is posted without stripe locks
+                TransferEngine.TransferOutcome outcome = transferEngine.post(account, destination, amount);
+                if (!outcome.isSuccess()) {
+                    result.complete(LedgerResult.failed(outcome.getMessage()));
+                    return;
+                }
+                complete(result, outcome.getDurable(),
+                    LedgerResult.succeeded(outcome.getDebit(), outcome.getCredit()));
+                break;
+            }
+            case TRANSFER_BATCH:
+                throw new IllegalStateException("Batches are executed by executeBatch");
+        }
+    }
+    
+    private void executeBatch(Account source, List<TransferEngine.BatchLeg> legs, TransferEngine.BatchMode mode,
+                              CompletableFuture<LedgerResult> result) {
+        TransferEngine.BatchOutcome outcome = transferEngine.postBatch(source, legs, mode);
+        if (outcome.getDurable() == null) {
+            result.complete(LedgerResult.batch(outcome));
+            return;
+        }
+        complete(result, outcome.getDurable(), LedgerResult.batch(outcome));
+    }
+    
+    // Completes the caller's future once the journal has made the mutation durable. The mutation
+    // is already applied, so a journal failure yields an unconfirmed result rather than an error.
+    private static void complete(CompletableFuture<LedgerResult> result, CompletableFuture<Long> durable,
+                                 LedgerResult value) {
+        durable.whenComplete((position, error) -> {
+            if (error != null) {
+                result.complete(value.unconfirmed(error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error));
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+    
+    private static Transaction newTransaction(Account account, Transaction.TransactionType type, Money amount,
+                                              String description, Money balanceAfter) {
+        Transaction transaction = new Transaction(IdGenerator.nextIdString(), account.getAccountNumber(),
+            type, amount, description);
+        transaction.setBalanceAfterMoney(balanceAfter);
+        transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
+        return transaction;
+    }
+    
+    // Number of commands accepted but not yet executed
+    public long getBacklog() {
+        return claimed.get() - consumed;
+    }
+    
+    // Pre-allocated ring slot; fields are published by the volatile write of 'published'
+    private static final class Command {
+        private volatile long published = -1;
+        private Operation operation;
+        private Account account;
+        private Account destination;
+        private Money amount;
+        private List<TransferEngine.BatchLeg> legs;
+        private TransferEngine.BatchMode mode;
+        private CompletableFuture<LedgerResult> result;
+    }
+    
+    // Result of a ledger command; counterpart is the credit leg of a transfer, batch the outcome of a batch
+    public static class LedgerResult {
+        private final boolean success;
+        private final String message;
+        private final Transaction transaction;
+        private final Transaction counterpart;
+        private final TransferEngine.BatchOutcome batch;
+        private final Throwable durabilityFailure;
+        
+        private LedgerResult(boolean success, String message, Transaction transaction, Transaction counterpart,
+                             TransferEngine.BatchOutcome batch, Throwable durabilityFailure) {
+            this.success = success;
+            this.message = message;
+            this.transaction = transaction;
+            this.counterpart = counterpart;
+            this.batch = batch;
+            this.durabilityFailure = durabilityFailure;
+        }
+        
+        static LedgerResult succeeded(Transaction transaction, Transaction counterpart) {
+            return new LedgerResult(true, "Completed", transaction, counterpart, null, null);
+        }
+        
+        static LedgerResult failed(String message) {
+            return new LedgerResult(false, message, null, null, null, null);
+        }
+        
+        static LedgerResult batch(TransferEngine.BatchOutcome outcome) {
+            return new LedgerResult(outcome.isSuccess(), outcome.getMessage(), null, null, outcome, null);
+        }
+        
+        LedgerResult unconfirmed(Throwable failure) {
+            return new LedgerResult(success, message, transaction, counterpart,
+                batch != null ? batch.unconfirmed(failure) : null, failure);
+        }
+        
+        // False when the command was applied but its journal write failed
+        public boolean isConfirmed() { return durabilityFailure == null; }
+        public Throwable getDurabilityFailure() { return durabilityFailure; }
+        
+        public boolean isSuccess() { return success; }
+        public String getMessage() { return message; }
+        public Transaction getTransaction() { return transaction; }
+        public Transaction getCounterpart() { return counterpart; }
+        public TransferEngine.BatchOutcome getBatch() { return batch; }
+    }
+}
@@ -0,0 +1,70 @@
+package com.atm.services;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Issues unpredictable session tokens: 128 random bits as 22 base64url characters.
+ *
+ * Each thread has its own DRBG-backed SecureRandom and draws random bytes for several
+ * tokens at a time, so issuing a token takes no shared lock and usually no call into
+ * the generator at all. At 128 bits, collisions are not a practical concern.
+ */
+public final class SessionTokenGenerator {
+    public static final int TOKEN_LENGTH = 22;
+    
+    private static final int TOKEN_BYTES = 16;
+    private static final int TOKENS_PER_REFILL = 32;
+    private static final char[] ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+    
+    private SessionTokenGenerator() {
+    }
+    
+    public static String nextToken() {
+        Buffer buffer = BUFFERS.get();
+        if (buffer.position == buffer.bytes.length) {
+            buffer.random.nextBytes(buffer.bytes);
+            buffer.position = 0;
+        }
+        byte[] bytes = buffer.bytes;
+        int offset = buffer.position;
+        buffer.position += TOKEN_BYTES;
+        
+        // 5 full 3-byte groups give 20 characters; the last byte gives 2 more
+        char[] token = new char[TOKEN_LENGTH];
+        int out = 0;
+        for (int i = offset; i < offset + 15; i += 3) {
+            int group = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            token[out++] = ALPHABET[group >>> 18];
+            token[out++] = ALPHABET[(group >>> 12) & 0x3f];
+            token[out++] = ALPHABET[(group >>> 6) & 0x3f];
+            token[out++] = ALPHABET[group & 0x3f];
+        }
+        int last = bytes[offset + 15] & 0xff;
+        token[out++] = ALPHABET[last >>> 2];
+        token[out] = ALPHABET[(last & 0x03) << 4];
+        
+        // Used bytes are not kept around once encoded
+        Arrays.fill(bytes, offset, offset + TOKEN_BYTES, (byte) 0);
+        return new String(token);
+    }
+    
+    private static final class Buffer {
+        private final SecureRandom random = newRandom();
+        private final byte[] bytes = new byte[TOKEN_BYTES * TOKENS_PER_REFILL];
+        private int position = bytes.length; // empty until first use
+    }
+    
+    // DRBG synchronizes per instance only; the platform default may share one lock process-wide
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.atm.services;
+
+import com.atm.models.Account;
+import com.atm.models.Money;
+import com.atm.models.Transaction;
+import com.atm.persistence.TransferRecord;
+import com.atm.utils.DataCache;
+import com.atm.utils.IdGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves money between accounts atomically.
+ *
+ * Each account number hashes to one of a fixed set of lock stripes. A transfer takes
+ * the stripes of both accounts in ascending stripe order, so transfers in opposite
+ * directions cannot deadlock, while transfers over disjoint account pairs usually hold
+ * different stripes and run in parallel. The debit, the credit and a single journal
+ * record covering both legs all happen under the locks.
+ *
+ * Batches from one source take every involved stripe once and are journaled as one record.
+ */
+public class TransferEngine {
+    private static final int STRIPE_COUNT = 256; // power of two
+    
+    public enum BatchMode {
+        ALL_OR_NOTHING, // any rejected leg rejects the whole batch
+        BEST_EFFORT     // legs are applied in order while funds last; rejected legs are skipped
+    }
+    
+    private static TransferEngine instance;
+    
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPE_COUNT];
+    private final DataCache cache;
+    
+    private TransferEngine() {
+        this.cache = DataCache.getInstance();
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+    
+    public static synchronized TransferEngine getInstance() {
+        if (instance == null) {
+            instance = new TransferEngine();
+        }
+        return instance;
+    }
+    
+    /**
+     * Debits source and credits destination as one step.
+     * Returns once the journal record for both legs is durable. If the journal fails, the
+     * transfer stays applied and the outcome reports it as not confirmed.
+     */
+    public TransferOutcome transfer(Account source, Account destination, Money amount) {
+        int[] held = lockAll(source.getAccountNumber(), destination.getAccountNumber());
+        TransferOutcome outcome;
+        try {
+            outcome = post(source, destination, amount);
+        } finally {
+            unlockAll(held);
+        }
+        
+        // Wait for durability outside the locks so other transfers on these stripes can proceed
+        if (outcome.isSuccess()) {
+            Throwable failure = awaitDurable(outcome.getDurable());
+            if (failure != null) {
+                return outcome.unconfirmed(failure);
+            }
+        }
+        return outcome;
+    }
+    
+    /**
+     * Applies both legs and journals them without taking any locks. Callers must hold the
+     * stripes of both accounts, or be the single thread that owns all balances.
+     */
+    TransferOutcome post(Account source, Account destination, Money amount) {
+        if (source.getAccountNumber().equals(destination.getAccountNumber())) {
+            return TransferOutcome.failed("Cannot transfer to the same account");
+        }
+        if (!destination.isActive()) {
+            return TransferOutcome.failed("Destination account not found or inactive");
+        }
+        Money sourceBalanceAfter = source.tryWithdraw(amount);
+        if (sourceBalanceAfter == null) {
+            return TransferOutcome.failed("Insufficient funds");
+        }
+        Money destinationBalanceAfter;
+        try {
+            destinationBalanceAfter = destination.deposit(amount);
+        } catch (IllegalArgumentException e) {
+            // Deactivated after the check above
+            source.reverseWithdrawal(amount);
+            return TransferOutcome.failed("Destination account not found or inactive");
+        }
+        
+        Transaction debit = debitTransaction(source, destination, amount, sourceBalanceAfter);
+        Transaction credit = creditTransaction(source, destination, amount, destinationBalanceAfter);
+        CompletableFuture<Long> durable = cache.recordTransfer(new TransferRecord(
+            Arrays.asList(source, destination), Arrays.asList(debit, credit)));
+        return TransferOutcome.succeeded(debit, credit, durable);
+    }
+    
+    /**
+     * Transfers from one source to many destinations under a single acquisition of all
+     * involved stripes. Returns once the batch's journal record is durable.
+     */
+    public BatchOutcome transferBatch(Account source, List<BatchLeg> legs, BatchMode mode) {
+        String[] accountNumbers = new String[legs.size() + 1];
+        accountNumbers[0] = source.getAccountNumber();
+        for (int i = 0; i < legs.size(); i++) {
+            Account destination = legs.get(i).getDestination();
+            // A missing destination is rejected by postBatch; lock the source stripe in its place
+            accountNumbers[i + 1] = destination != null ? destination.getAccountNumber() : accountNumbers[0];
+        }
+        
+        int[] held = lockAll(accountNumbers);
+        BatchOutcome outcome;
+        try {
+            outcome = postBatch(source, legs, mode);
+        } finally {
+            unlockAll(held);
+        }
+        
+        if (outcome.getDurable() != null) {
+            Throwable failure = awaitDurable(outcome.getDurable());
+            if (failure != null) {
+                return outcome.unconfirmed(failure);
+            }
+        }
+        return outcome;
+    }
+    
+    // Returns the journal's failure, or null once the record is durable
+    static Throwable awaitDurable(CompletableFuture<Long> durable) {
+        try {
+            durable.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        }
+    }
+    
+    /**
+     * Applies a batch and journals all applied legs as one record, without taking any locks.
+     * Same locking contract as post().
+     */
+    BatchOutcome postBatch(Account source, List<BatchLeg> legs, BatchMode mode) {
+        List<LegOutcome> results = new ArrayList<>(legs.size());
+        List<Transaction> transactions = new ArrayList<>(legs.size() * 2);
+        Set<Account> touched = new LinkedHashSet<>();
+        touched.add(source);
+        
+        if (mode == BatchMode.ALL_OR_NOTHING) {
+            Money total = Money.ZERO;
+            String rejection = null;
+            for (BatchLeg leg : legs) {
+                String reason = rejectReason(source, leg);
+                results.add(reason == null ? LegOutcome.NOT_APPLIED : LegOutcome.failed(reason));
+                if (reason == null) {
+                    total = total.plus(leg.getAmount());
+                } else if (rejection == null) {
+                    rejection = reason;
+                }
+            }
+            if (rejection != null) {
+                return BatchOutcome.failed("Batch rejected: " + rejection, results);
+            }
+            
+            // One debit for the whole batch; each debit record shows the running balance
+            Money sourceBalanceAfter = source.tryWithdraw(total);
+            if (sourceBalanceAfter == null) {
+                return BatchOutcome.failed("Insufficient funds", Collections.nCopies(legs.size(),
+                    LegOutcome.NOT_APPLIED));
+            }
+            Money running = sourceBalanceAfter.plus(total);
+            results.clear();
+            for (int i = 0; i < legs.size(); i++) {
+                BatchLeg leg = legs.get(i);
+                Money destinationBalanceAfter;
+                try {
+                    destinationBalanceAfter = leg.getDestination().deposit(leg.getAmount());
+                } catch (IllegalArgumentException e) {
+                    // Deactivated after validation: undo the legs credited so far and the debit
+                    for (int j = 0; j < i; j++) {
+                        legs.get(j).getDestination().reverseDeposit(legs.get(j).getAmount());
+                    }
+                    source.reverseWithdrawal(total);
+                    return BatchOutcome.failed("Batch rejected: Destination account not found or inactive",
+                        Collections.nCopies(legs.size(), LegOutcome.NOT_APPLIED));
+                }
+                running = running.minus(leg.getAmount());
+                results.add(applied(source, leg, running, destinationBalanceAfter, transactions, touched));
+            }
+            return journalBatch("Batch transfer completed", results, transactions, touched);
+        }
+        
+        for (BatchLeg leg : legs) {
+            String reason = rejectReason(source, leg);
+            if (reason != null) {
+                results.add(LegOutcome.failed(reason));
+                continue;
+            }
+            Money sourceBalanceAfter = source.tryWithdraw(leg.getAmount());
+            if (sourceBalanceAfter == null) {
+                results.add(LegOutcome.failed("Insufficient funds"));
+                continue;
+            }
+            Money destinationBalanceAfter;
+            try {
+                destinationBalanceAfter = leg.getDestination().deposit(leg.getAmount());
+            } catch (IllegalArgumentException e) {
+                source.reverseWithdrawal(leg.getAmount());
+                results.add(LegOutcome.failed("Destination account not found or inactive"));
+                continue;
+            }
+            results.add(applied(source, leg, sourceBalanceAfter, destinationBalanceAfter, transactions, touched));
+        }
+        if (transactions.isEmpty()) {
+            return BatchOutcome.failed("No transfers completed", results);
+        }
+        return journalBatch((transactions.size() / 2) + " of " + legs.size() + " transfers completed",
+            results, transactions, touched);
+    }
+    
+    private static String rejectReason(Account source, BatchLeg leg) {
+        if (leg.getAmount() == null || !leg.getAmount().isPositive()) {
+            return "Invalid transfer amount";
+        }
+        Account destination = leg.getDestination();
+        if (destination == null || !destination.isActive()) {
+            return "Destination account not found or inactive";
+        }
+        if (source.getAccountNumber().equals(destination.getAccountNumber())) {
+            return "Cannot transfer to the same account";
+        }
+        return null;
+    }
+    
+    private static LegOutcome applied(Account source, BatchLeg leg, Money sourceBalanceAfter,
+                                      Money destinationBalanceAfter, List<Transaction> transactions,
+                                      Set<Account> touched) {
+        Transaction debit = debitTransaction(source, leg.getDestination(), leg.getAmount(), sourceBalanceAfter);
+        Transaction credit = creditTransaction(source, leg.getDestination(), leg.getAmount(),
+            destinationBalanceAfter);
+        transactions.add(debit);
+        transactions.add(credit);
+        touched.add(leg.getDestination());
+        return LegOutcome.succeeded(debit, credit);
+    }
+    
+    private BatchOutcome journalBatch(String message, List<LegOutcome> results, List<Transaction> transactions,
+                                      Set<Account> touched) {
+        CompletableFuture<Long> durable = cache.recordTransfer(
+            new TransferRecord(new ArrayList<>(touched), transactions));
+        return BatchOutcome.succeeded(message, results, durable);
+    }
+    
+    private static Transaction debitTransaction(Account source, Account destination, Money amount,
+                                                Money balanceAfter) {
+        Transaction debit = new Transaction(IdGenerator.nextIdString(), source.getAccountNumber(),
+            Transaction.TransactionType.TRANSFER, amount, "Transfer to " + destination.getAccountNumber());
+        debit.setDestinationAccount(destination.getAccountNumber());
+        debit.setBalanceAfterMoney(balanceAfter);
+        debit.setStatus(Transaction.TransactionStatus.COMPLETED);
+        return debit;
+    }
+    
+    private static Transaction creditTransaction(Account source, Account destination, Money amount,
+                                                 Money balanceAfter) {
+        Transaction credit = new Transaction(IdGenerator.nextIdString(), destination.getAccountNumber(),
+            Transaction.TransactionType.DEPOSIT, amount, "Transfer from " + source.getAccountNumber());
+        credit.setBalanceAfterMoney(balanceAfter);
+        credit.setStatus(Transaction.TransactionStatus.COMPLETED);
+        return credit;
+    }
+    
+    // Locks the stripes of the given accounts in ascending order; returns the distinct stripes held
+    int[] lockAll(String... accountNumbers) {
+        int[] indexes = new int[accountNumbers.length];
+        for (int i = 0; i < accountNumbers.length; i++) {
+            indexes[i] = stripeOf(accountNumbers[i]);
+        }
+        Arrays.sort(indexes);
+        int distinct = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            if (i == 0 || indexes[i] != indexes[i - 1]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        int[] held = Arrays.copyOf(indexes, distinct);
+        for (int i = 0; i < held.length; i++) {
+            stripes[held[i]].lock();
+        }
+        return held;
+    }
+    
+    void unlockAll(int[] held) {
+        for (int i = held.length - 1; i >= 0; i--) {
+            stripes[held[i]].unlock();
+        }
+    }
+    
+    private static int stripeOf(String accountNumber) {
+        int hash = accountNumber.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1);
+    }
+    
+    // Result of a transfer; debit and credit are null when it failed
+    public static class TransferOutcome {
+        private final boolean success;
+        private final String message;
+        private final Transaction debit;
+        private final Transaction credit;
+        private final CompletableFuture<Long> durable;
+        private final Throwable durabilityFailure;
+        
+        private TransferOutcome(boolean success, String message, Transaction debit, Transaction credit,
+                                CompletableFuture<Long> durable, Throwable durabilityFailure) {
+            this.success = success;
+            this.message = message;
+            this.debit = debit;
+            this.credit = credit;
+            this.durable = durable;
+            this.durabilityFailure = durabilityFailure;
+        }
+        
+        static TransferOutcome succeeded(Transaction debit, Transaction credit, CompletableFuture<Long> durable) {
+            return new TransferOutcome(true, "Transfer completed", debit, credit, durable, null);
+        }
+        
+        static TransferOutcome failed(String message) {
+            return new TransferOutcome(false, message, null, null, null, null);
+        }
+        
+        // Applied in memory, but the journal failed to record it
+        TransferOutcome unconfirmed(Throwable failure) {
+            return new TransferOutcome(success, message, debit, credit, durable, failure);
+        }
+        
+        // Completes once the transfer's journal record is durable; null when it failed
+        CompletableFuture<Long> getDurable() { return durable; }
+        
+        // False when the transfer was applied but its journal write failed
+        public boolean isConfirmed() { return durabilityFailure == null; }
+        public Throwable getDurabilityFailure() { return durabilityFailure; }
+        public boolean isSuccess() { return success; }
+        public String getMessage() { return message; }
+        public Transaction getDebit() { return debit; }
+        public Transaction getCredit() { return credit; }
+    }
+    
+    // One destination of a batch; destination is null when the account does not exist
+    public static class BatchLeg {
+        private final Account destination;
+        private final Money amount;
+        
+        public BatchLeg(Account destination, Money amount) {
+            this.destination = destination;
+            this.amount = amount;
+        }
+        
+        public Account getDestination() { return destination; }
+        public Money getAmount() { return amount; }
+    }
+    
+    // Result of one leg of a batch; debit and credit are null when it was not applied
+    public static class LegOutcome {
+        static final LegOutcome NOT_APPLIED = failed("Not applied");
+        
+        private final boolean success;
+        private final String message;
+        private final Transaction debit;
+        private final Transaction credit;
+        
+        private LegOutcome(boolean success, String message, Transaction debit, Transaction credit) {
+            this.success = success;
+            this.message = message;
+            this.debit = debit;
+            this.credit = credit;
+        }
+        
+        static LegOutcome succeeded(Transaction debit, Transaction credit) {
+            return new LegOutcome(true, "Transfer completed", debit, credit);
+        }
+        
+        static LegOutcome failed(String message) {
+            return new LegOutcome(false, message, null, null);
+        }
+        
+        public boolean isSuccess() { return success; }
+        public String getMessage() { return message; }
+        public Transaction getDebit() { return debit; }
+        public Transaction getCredit() { return credit; }
+    }
+    
+    // Result of a batch, with one leg outcome per requested leg in request order
+    public static class BatchOutcome {
+        private final boolean success;
+        private final String message;
+        private final List<LegOutcome> legs;
+        private final CompletableFuture<Long> durable;
+        private final Throwable durabilityFailure;
+        
+        private BatchOutcome(boolean success, String message, List<LegOutcome> legs,
+                             CompletableFuture<Long> durable, Throwable durabilityFailure) {
+            this.success = success;
+            this.message = message;
+            this.legs = Collections.unmodifiableList(legs);
+            this.durable = durable;
+            this.durabilityFailure = durabilityFailure;
+        }
+        
+        static BatchOutcome succeeded(String message, List<LegOutcome> legs, CompletableFuture<Long> durable) {
+            return new BatchOutcome(true, message, legs, durable, null);
+        }
+        
+        static BatchOutcome failed(String message, List<LegOutcome> legs) {
+            return new BatchOutcome(false, message, legs, null, null);
+        }
+        
+        // Applied legs stay applied, but the journal failed to record them
+        BatchOutcome unconfirmed(Throwable failure) {
+            return new BatchOutcome(success, message, legs, durable, failure);
+        }
+        
+        // Completes once the batch's journal record is durable; null when nothing was applied
+        CompletableFuture<Long> getDurable() { return durable; }
+        
+        // False when legs were applied but the batch's journal write failed
+        public boolean isConfirmed() { return durabilityFailure == null; }
+        public Throwable getDurabilityFailure() { return durabilityFailure; }
+        
+        public boolean isSuccess() { return success; }
+        public String getMessage() { return message; }
+        public List<LegOutcome> getLegs() { return legs; }
+    }
+}
@@ -4,18 +4,41 @@ import com.atm.models.Account;
 import com.atm.models.Card;
 import com.atm.models.User;
 import com.atm.models.Transaction;
+import com.atm.models.TransactionHistorySource;
+import com.atm.persistence.Journal;
+import com.atm.persistence.TransactionLog;
+import com.atm.persistence.TransferRecord;
+import com.atm.services.AuthenticationService;
 
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.util.Collections;
 
 /**
  * In-memory cache for storing temporary data and managing user sessions
  */
-public class DataCache {
+public class DataCache implements TransactionHistorySource {
     private static DataCache instance;
     
     // Data storage
@@ -24,15 +47,61 @@ public class DataCache {
     private Map<String, Card> cards;
     private Map<String, Transaction> transactions;
     
+    // Secondary indexes (userId -> owned accounts/cards)
+    private Map<String, List<Account>> accountsByUserId;
+    private Map<String, List<Card>> cardsByUserId;
+    // normalised email -> userId; doubles as the uniqueness constraint for sign-ups
+    private Map<String, String> userIdsByEmail;
+    // accountNumber -> transactions in (timestamp, insertion sequence) order
+    private Map<String, ConcurrentNavigableMap<TransactionKey, Transaction>> transactionsByAccount;
+    private final AtomicLong transactionSequence = new AtomicLong();
+    // Writers share the read side; clearAll takes the write side so it never races an index update
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+    
     // Session management
     private Map<String, UserSession> activeSessions;
+    // Versions of each card, account and user, bumped after one is replaced or changed; a
+    // session's cached context is only used while the three it resolved are still current,
+    // so a change to one card only affects that card's sessions
+    private final Map<String, Long> cardVersions = new ConcurrentHashMap<>();
+    private final Map<String, Long> accountVersions = new ConcurrentHashMap<>();
+    private final Map<String, Long> userVersions = new ConcurrentHashMap<>();
+    // Bumped only when every cached context must go, e.g. by clearAll
+    private final AtomicLong sessionEpoch = new AtomicLong();
+    // Removes idle sessions in the background; 512 one-second slots span more than one timeout
+    private final SessionExpiryWheel sessionExpiry;
+    
+    // Write-ahead journal; null while running purely in memory or replaying
+    private volatile Journal journal;
+    private static final CompletableFuture<Long> NOT_JOURNALED = CompletableFuture.completedFuture(-1L);
+    
+    // Memory-mapped transaction store; when attached, transaction history lives in the log
+    // and only transactionId -> log position and referenceNumber -> log position are kept on the heap
+    private volatile TransactionLog transactionLog;
+    private Map<String, Long> transactionPositions;
+    private Map<String, Long> transactionPositionsByReference;
+    // referenceNumber -> transactionId, for receipt lookups while transactions are kept in memory
+    private Map<String, String> transactionIdsByReference;
+    
+    // Notified of every newly stored transaction, on the writing thread; must not block
+    private final List<Consumer<Transaction>> transactionListeners = new CopyOnWriteArrayList<>();
+    // Notified by clearAll while it holds the index write lock; must not block
+    private final List<Runnable> clearListeners = new CopyOnWriteArrayList<>();
     
     private DataCache() {
         users = new ConcurrentHashMap<>();
         accounts = new ConcurrentHashMap<>();
         cards = new ConcurrentHashMap<>();
         transactions = new ConcurrentHashMap<>();
+        accountsByUserId = new ConcurrentHashMap<>();
+        cardsByUserId = new ConcurrentHashMap<>();
+        userIdsByEmail = new ConcurrentHashMap<>();
+        transactionsByAccount = new ConcurrentHashMap<>();
+        transactionPositions = new ConcurrentHashMap<>();
+        transactionPositionsByReference = new ConcurrentHashMap<>();
+        transactionIdsByReference = new ConcurrentHashMap<>();
         activeSessions = new ConcurrentHashMap<>();
+        sessionExpiry = new SessionExpiryWheel(activeSessions, 1000, 512);
     }
     
     public static synchronized DataCache getInstance() {
@@ -42,9 +111,138 @@ public class DataCache {
         return instance;
     }
     
+    // Persistence
+    public void attachJournal(Journal journal) {
+        this.journal = journal;
+    }
+    
+    public Journal getJournal() {
+        return journal;
+    }
+    
+    // False once the attached journal has failed: new changes could no longer be made durable
+    public boolean isWritable() {
+        Journal current = journal;
+        return current == null || !current.hasFailed();
+    }
+    
+    /**
+     * Moves transaction storage into a memory-mapped log. Must be called before any
+     * transactions are added; the id index is rebuilt from the records already in the log.
+     */
+    public void attachTransactionLog(TransactionLog log) {
+        indexLock.writeLock().lock();
+        try {
+            transactions.clear();
+            transactionsByAccount.clear();
+            transactionPositions.clear();
+            transactionPositionsByReference.clear();
+            transactionIdsByReference.clear();
+            indexLoggedTransactions(log);
+            this.transactionLog = log;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Drops logged transactions from a position on, e.g. those a restored snapshot does not
+     * confirm; journal replay logs the confirmed ones again. Must be called before the
+     * accounts they belong to are restored.
+     */
+    public void truncateTransactionLog(long size) {
+        indexLock.writeLock().lock();
+        try {
+            TransactionLog log = transactionLog;
+            if (log == null || size >= log.size()) {
+                return;
+            }
+            System.out.println("Discarding " + (log.size() - size) + " transaction log records not confirmed by the snapshot");
+            log.truncate(size);
+            transactionPositions.clear();
+            transactionPositionsByReference.clear();
+            transactionIdsByReference.clear();
+            indexLoggedTransactions(log);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+    
+    private void indexLoggedTransactions(TransactionLog log) {
+        log.forEachPosition(position -> {
+            Long boxed = position; // shared by both maps
+            transactionPositions.put(log.readTransactionId(position), boxed);
+            indexLoggedReference(log.readReferenceNumber(position), boxed);
+        });
+    }
+    
+    public TransactionLog getTransactionLog() {
+        return transactionLog;
+    }
+    
+    // Event stream of stored transactions, e.g. for read models
+    public void addTransactionListener(Consumer<Transaction> listener) {
+        transactionListeners.add(listener);
+    }
+    
+    public void removeTransactionListener(Consumer<Transaction> listener) {
+        transactionListeners.remove(listener);
+    }
+    
+    // Called after clearAll has emptied the cache, e.g. so read models drop their views
+    public void addClearListener(Runnable listener) {
+        clearListeners.add(listener);
+    }
+    
+    public void removeClearListener(Runnable listener) {
+        clearListeners.remove(listener);
+    }
+    
+    private void publish(Transaction transaction) {
+        for (Consumer<Transaction> listener : transactionListeners) {
+            listener.accept(transaction);
+        }
+    }
+    
+    /**
+     * Runs the action while no transaction is being stored. Listeners are notified as part of
+     * storing, so every transaction the action can see has already been published, and every
+     * transaction it cannot see will be published after it returns.
+     */
+    public <T> T whileStoresPaused(Supplier<T> action) {
+        indexLock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+    
+    // Returns a future that completes once the record is durable (immediately when not journaling)
+    private CompletableFuture<Long> journal(Journal.RecordType type, Object model) {
+        Journal current = journal;
+        return current != null ? current.append(type, model) : NOT_JOURNALED;
+    }
+    
     // User operations
     public void addUser(User user) {
-        users.put(user.getUserId(), user);
+        indexLock.readLock().lock();
+        try {
+            users.put(user.getUserId(), user);
+            bumpVersion(userVersions, user.getUserId());
+            if (user.getEmail() != null) {
+                userIdsByEmail.putIfAbsent(normaliseEmail(user.getEmail()), user.getUserId());
+            }
+            journal(Journal.RecordType.USER, user);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+    
+    // Records in-place changes to a user that is already cached
+    public CompletableFuture<Long> updateUser(User user) {
+        bumpVersion(userVersions, user.getUserId());
+        return journal(Journal.RecordType.USER, user);
     }
     
     public User getUser(String userId) {
@@ -55,9 +253,65 @@ public class DataCache {
         return new ArrayList<>(users.values());
     }
     
+    /**
+     * Atomically reserves an email address for a user.
+     * @return true if the email was free (or already held by this user), false if another user owns it
+     */
+    public boolean claimEmail(String email, String userId) {
+        String owner = userIdsByEmail.putIfAbsent(normaliseEmail(email), userId);
+        return owner == null || owner.equals(userId);
+    }
+    
+    /**
+     * Releases an email reservation, e.g. when account creation fails after the claim
+     */
+    public void releaseEmail(String email, String userId) {
+        userIdsByEmail.remove(normaliseEmail(email), userId);
+    }
+    
+    public boolean isEmailRegistered(String email) {
+        return userIdsByEmail.containsKey(normaliseEmail(email));
+    }
+    
+    private static String normaliseEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+    
     // Account operations
     public void addAccount(Account account) {
-        accounts.put(account.getAccountNumber(), account);
+        indexLock.readLock().lock();
+        try {
+            accounts.compute(account.getAccountNumber(), (accountNumber, previous) -> {
+                if (previous != null) {
+                    removeFromIndex(accountsByUserId, previous.getUserId(), previous);
+                }
+                addToIndex(accountsByUserId, account.getUserId(), account);
+                return account;
+            });
+            // After the new account is visible, so a context resolved at the new version never holds the old one
+            bumpVersion(accountVersions, account.getAccountNumber());
+            journal(Journal.RecordType.ACCOUNT, account);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        
+        // Older history is served from here; transactions restored from the log are not
+        // replayed, so only the most recent ones are loaded into the account's ring
+        boolean emptyRing = account.getRecentTransactions(1).isEmpty();
+        account.setHistorySource(this);
+        TransactionLog log = transactionLog;
+        TransactionLog.PositionList positions = log != null ? log.positions(account.getAccountNumber()) : null;
+        if (positions != null && emptyRing) {
+            int count = positions.size();
+            for (int i = Math.max(0, count - Account.RECENT_TRANSACTION_CAPACITY); i < count; i++) {
+                account.addTransaction(log.view(positions.get(i)));
+            }
+        }
+    }
+    
+    // Records in-place changes (balance, limits, status) to a cached account
+    public CompletableFuture<Long> updateAccount(Account account) {
+        return journal(Journal.RecordType.ACCOUNT, account);
     }
     
     public Account getAccount(String accountNumber) {
@@ -65,14 +319,31 @@ public class DataCache {
     }
     
     public List<Account> getAccountsByUserId(String userId) {
-        return accounts.values().stream()
-                .filter(account -> account.getUserId().equals(userId))
-                .collect(Collectors.toList());
+        return indexView(accountsByUserId, userId);
     }
     
     // Card operations
     public void addCard(Card card) {
-        cards.put(card.getCardNumber(), card);
+        indexLock.readLock().lock();
+        try {
+            cards.compute(card.getCardNumber(), (cardNumber, previous) -> {
+                if (previous != null) {
+                    removeFromIndex(cardsByUserId, previous.getUserId(), previous);
+                }
+                addToIndex(cardsByUserId, card.getUserId(), card);
+                return card;
+            });
+            bumpVersion(cardVersions, card.getCardNumber());
+            journal(Journal.RecordType.CARD, card);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+    
+    // Records in-place changes (PIN, status, failed attempts) to a cached card
+    public CompletableFuture<Long> updateCard(Card card) {
+        bumpVersion(cardVersions, card.getCardNumber());
+        return journal(Journal.RecordType.CARD, card);
     }
     
     public Card getCard(String cardNumber) {
@@ -80,67 +351,555 @@ public class DataCache {
     }
     
     public List<Card> getCardsByUserId(String userId) {
-        return cards.values().stream()
-                .filter(card -> card.getUserId().equals(userId))
-                .collect(Collectors.toList());
+        return indexView(cardsByUserId, userId);
+    }
+    
+    // Index helpers - per-user lists are copy-on-write, so readers iterate a stable snapshot
+    private static <T> void addToIndex(Map<String, List<T>> index, String userId, T value) {
+        index.compute(userId, (id, values) -> {
+            if (values == null) {
+                values = new CopyOnWriteArrayList<>();
+            }
+            values.add(value);
+            return values;
+        });
+    }
+    
+    private static <T> void removeFromIndex(Map<String, List<T>> index, String userId, T value) {
+        index.computeIfPresent(userId, (id, values) -> {
+            values.remove(value);
+            return values.isEmpty() ? null : values;
+        });
+    }
+    
+    private static <T> List<T> indexView(Map<String, List<T>> index, String userId) {
+        List<T> values = index.get(userId);
+        return values == null ? Collections.emptyList() : Collections.unmodifiableList(values);
     }
     
     // Transaction operations
-    public void addTransaction(Transaction transaction) {
-        transactions.put(transaction.getTransactionId(), transaction);
+    /**
+     * Stores a transaction and returns a future that completes once it is durable.
+     * Records are journaled in order, so waiting on the last write of an operation
+     * also covers every write made before it.
+     */
+    public CompletableFuture<Long> addTransaction(Transaction transaction) {
+        indexLock.readLock().lock();
+        try {
+            if (!storeTransaction(transaction)) {
+                return NOT_JOURNALED;
+            }
+            publish(transaction);
+            return journal(Journal.RecordType.TRANSACTION, transaction);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Stores every transaction of a transfer and journals them, together with the
+     * resulting account states, as one record so that replay never sees half a transfer.
+     */
+    public CompletableFuture<Long> recordTransfer(TransferRecord transfer) {
+        indexLock.readLock().lock();
+        try {
+            for (Transaction transaction : transfer.getTransactions()) {
+                if (storeTransaction(transaction)) {
+                    publish(transaction);
+                }
+            }
+            return journal(Journal.RecordType.TRANSFER, transfer);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+    
+    // Indexes a transaction and links it to its account; callers hold the index read lock.
+    // Returns false if the transaction log already holds this id.
+    private boolean storeTransaction(Transaction transaction) {
+        if (transactionLog != null) {
+            return storeLoggedTransaction(transaction);
+        }
+        Transaction previous = transactions.put(transaction.getTransactionId(), transaction);
+        if (previous != null) {
+            String previousReference = previous.getReferenceNumber();
+            if (previousReference != null) {
+                transactionIdsByReference.remove(previousReference, previous.getTransactionId());
+            }
+            ConcurrentNavigableMap<TransactionKey, Transaction> previousIndex =
+                transactionsByAccount.get(previous.getAccountNumber());
+            if (previousIndex != null) {
+                previousIndex.values().remove(previous);
+            }
+        }
+        
+        TransactionKey key = new TransactionKey(transaction.getTimestamp(), transactionSequence.incrementAndGet());
+        transactionsByAccount
+            .computeIfAbsent(transaction.getAccountNumber(), accountNumber -> new ConcurrentSkipListMap<>())
+            .put(key, transaction);
+        indexReference(transaction.getReferenceNumber(), transaction.getTransactionId());
         
         // Also add to account's transaction history
         Account account = getAccount(transaction.getAccountNumber());
         if (account != null) {
             account.addTransaction(transaction);
         }
+        return true;
+    }
+    
+    // Log records are immutable, so a transaction id that is already logged is kept as is
+    private boolean storeLoggedTransaction(Transaction transaction) {
+        TransactionLog log = transactionLog;
+        boolean[] appended = new boolean[1];
+        Long position = transactionPositions.computeIfAbsent(transaction.getTransactionId(), transactionId -> {
+            appended[0] = true;
+            return log.append(transaction);
+        });
+        
+        if (appended[0]) {
+            indexLoggedReference(transaction.getReferenceNumber(), position);
+        }
+        
+        Account account = getAccount(transaction.getAccountNumber());
+        if (account != null && appended[0]) {
+            account.addTransaction(log.view(position));
+        }
+        return appended[0];
+    }
+    
+    private void indexReference(String referenceNumber, String transactionId) {
+        if (referenceNumber != null) {
+            transactionIdsByReference.put(referenceNumber, transactionId);
+        }
+    }
+    
+    private void indexLoggedReference(String referenceNumber, Long position) {
+        if (referenceNumber != null) {
+            transactionPositionsByReference.put(referenceNumber, position);
+        }
     }
     
     public Transaction getTransaction(String transactionId) {
+        TransactionLog log = transactionLog;
+        if (log != null) {
+            Long position = transactionPositions.get(transactionId);
+            return position != null ? log.view(position) : null;
+        }
         return transactions.get(transactionId);
     }
     
+    // Looks up a transaction by the reference number printed on its receipt
+    public Transaction getTransactionByReference(String referenceNumber) {
+        TransactionLog log = transactionLog;
+        if (log != null) {
+            Long position = transactionPositionsByReference.get(referenceNumber);
+            return position != null ? log.view(position) : null;
+        }
+        String transactionId = transactionIdsByReference.get(referenceNumber);
+        return transactionId != null ? getTransaction(transactionId) : null;
+    }
+    
     public List<Transaction> getTransactionsByAccount(String accountNumber) {
-        return transactions.values().stream()
-                .filter(transaction -> transaction.getAccountNumber().equals(accountNumber))
-                .collect(Collectors.toList());
+        TransactionLog log = transactionLog;
+        if (log != null) {
+            TransactionLog.PositionList positions = log.positions(accountNumber);
+            int count = positions != null ? positions.size() : 0;
+            List<Transaction> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(log.view(positions.get(i)));
+            }
+            return result;
+        }
+        ConcurrentNavigableMap<TransactionKey, Transaction> index = transactionsByAccount.get(accountNumber);
+        return index == null ? new ArrayList<>() : new ArrayList<>(index.values());
+    }
+    
+    @Override
+    public List<Transaction> getTransactionHistory(String accountNumber) {
+        TransactionLog log = transactionLog;
+        if (log != null) {
+            return log.history(accountNumber);
+        }
+        ConcurrentNavigableMap<TransactionKey, Transaction> index = transactionsByAccount.get(accountNumber);
+        return index == null ? Collections.emptyList() : new IndexHistoryView(index);
+    }
+    
+    // Visits the account's transactions stamped at or after 'since', latest first, without
+    // walking the older history
+    public void forEachTransactionSince(String accountNumber, LocalDateTime since, Consumer<Transaction> action) {
+        TransactionLog log = transactionLog;
+        if (log != null) {
+            TransactionLog.PositionList positions = log.positions(accountNumber);
+            if (positions == null) {
+                return;
+            }
+            // Only a time-ordered list can stop at the first older record
+            boolean timeOrdered = positions.isTimeOrdered();
+            for (int i = positions.size() - 1; i >= 0; i--) {
+                Transaction transaction = log.view(positions.get(i));
+                if (transaction.getTimestamp().isBefore(since)) {
+                    if (timeOrdered) {
+                        break;
+                    }
+                    continue;
+                }
+                action.accept(transaction);
+            }
+            return;
+        }
+        ConcurrentNavigableMap<TransactionKey, Transaction> index = transactionsByAccount.get(accountNumber);
+        if (index != null) {
+            index.tailMap(new TransactionKey(since, Long.MIN_VALUE), true).descendingMap().values().forEach(action);
+        }
     }
     
     public List<Transaction> getRecentTransactions(String accountNumber, int limit) {
-        return transactions.values().stream()
-                .filter(transaction -> transaction.getAccountNumber().equals(accountNumber))
-                .sorted((t1, t2) -> t2.getTimestamp().compareTo(t1.getTimestamp()))
-                .limit(limit)
-                .collect(Collectors.toList());
+        List<Transaction> recent = new ArrayList<>(Math.max(0, Math.min(limit, 64)));
+        TransactionLog log = transactionLog;
+        if (log != null) {
+            TransactionLog.PositionList positions = log.positions(accountNumber);
+            for (int i = positions != null ? positions.size() - 1 : -1; i >= 0 && recent.size() < limit; i--) {
+                recent.add(log.view(positions.get(i)));
+            }
+            return recent;
+        }
+        ConcurrentNavigableMap<TransactionKey, Transaction> index = transactionsByAccount.get(accountNumber);
+        if (index == null) {
+            return recent;
+        }
+        // Newest first; stops after 'limit' entries instead of sorting the whole history
+        for (Transaction transaction : index.descendingMap().values()) {
+            if (recent.size() >= limit) {
+                break;
+            }
+            recent.add(transaction);
+        }
+        return recent;
+    }
+    
+    /**
+     * Returns one page of an account's transactions in chronological order.
+     * Only the [from, to) slice of the account's index is visited, and at most one
+     * page is materialised, so long histories never need to be loaded in full.
+     *
+     * @param from inclusive lower bound, or null for the start of history
+     * @param to exclusive upper bound, or null for the end of history
+     * @param type transaction type to keep, or null for all types
+     * @param cursor opaque cursor from a previous page, or null for the first page
+     * @param pageSize maximum number of transactions to return
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public TransactionPage queryTransactions(String accountNumber, LocalDateTime from, LocalDateTime to,
+                                             Transaction.TransactionType type, String cursor, int pageSize) {
+        List<Transaction> page = new ArrayList<>(Math.max(0, Math.min(pageSize, 64)));
+        if (transactionLog != null) {
+            return queryLoggedTransactions(accountNumber, from, to, type, cursor, pageSize, page);
+        }
+        NavigableMap<TransactionKey, Transaction> window = transactionsByAccount.get(accountNumber);
+        if (window == null || pageSize <= 0) {
+            return new TransactionPage(page, null);
+        }
+        
+        TransactionKey after = cursor != null ? TransactionKey.fromCursor(cursor) : null;
+        if (after != null) {
+            window = window.tailMap(after, false);
+        } else if (from != null) {
+            window = window.tailMap(new TransactionKey(from, Long.MIN_VALUE), true);
+        }
+        if (to != null) {
+            window = window.headMap(new TransactionKey(to, Long.MIN_VALUE), false);
+        }
+        
+        // Once the page is full, the scan goes on only to find whether another matching entry follows
+        TransactionKey lastKey = null;
+        boolean hasMore = false;
+        for (Map.Entry<TransactionKey, Transaction> entry : window.entrySet()) {
+            Transaction transaction = entry.getValue();
+            if (type != null && transaction.getType() != type) {
+                continue;
+            }
+            if (page.size() >= pageSize) {
+                hasMore = true;
+                break;
+            }
+            page.add(transaction);
+            lastKey = entry.getKey();
+        }
+        return new TransactionPage(page, hasMore ? lastKey.toCursor() : null);
+    }
+    
+    // Log-backed query: positions are in append order, which is also timestamp order, so both
+    // the cursor (whose sequence is a log position) and 'from' resolve by binary search
+    private TransactionPage queryLoggedTransactions(String accountNumber, LocalDateTime from, LocalDateTime to,
+                                                    Transaction.TransactionType type, String cursor, int pageSize,
+                                                    List<Transaction> page) {
+        TransactionLog log = transactionLog;
+        TransactionLog.PositionList positions = log.positions(accountNumber);
+        if (positions == null || pageSize <= 0) {
+            return new TransactionPage(page, null);
+        }
+        int count = positions.size();
+        boolean ordered = positions.isTimeOrdered();
+        
+        int index;
+        if (cursor != null) {
+            index = positions.indexAfter(TransactionKey.fromCursor(cursor).getSequence(), count);
+        } else if (from != null && ordered) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (log.readTimestamp(positions.get(mid)).isBefore(from)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            index = low;
+        } else {
+            index = 0;
+        }
+        
+        // An ordered list stops at the first record at or after 'to'; otherwise every record is checked
+        long lastPosition = -1;
+        boolean hasMore = false;
+        for (; index < count; index++) {
+            long position = positions.get(index);
+            LocalDateTime timestamp = log.readTimestamp(position);
+            if (to != null && !timestamp.isBefore(to)) {
+                if (ordered) {
+                    break;
+                }
+                continue;
+            }
+            if (from != null && timestamp.isBefore(from)) {
+                continue;
+            }
+            if (type != null && log.readType(position) != type) {
+                continue;
+            }
+            if (page.size() >= pageSize) {
+                hasMore = true; // like the in-memory path, only a later matching record counts
+                break;
+            }
+            page.add(log.view(position));
+            lastPosition = position;
+        }
+        return new TransactionPage(page, hasMore
+            ? new TransactionKey(log.readTimestamp(lastPosition), lastPosition).toCursor() : null);
     }
     
     // Session management
     public void createSession(String sessionId, String cardNumber) {
         UserSession session = new UserSession(sessionId, cardNumber, LocalDateTime.now());
         activeSessions.put(sessionId, session);
+        sessionExpiry.start();
+        sessionExpiry.schedule(session);
     }
     
     public UserSession getSession(String sessionId) {
         return activeSessions.get(sessionId);
     }
     
+    public long getSessionEpoch() {
+        return sessionEpoch.get();
+    }
+    
+    // Current versions for session context checks; reading one allocates nothing
+    public long getCardVersion(String cardNumber) {
+        return cardVersions.getOrDefault(cardNumber, 0L);
+    }
+    
+    public long getAccountVersion(String accountNumber) {
+        return accountVersions.getOrDefault(accountNumber, 0L);
+    }
+    
+    public long getUserVersion(String userId) {
+        return userVersions.getOrDefault(userId, 0L);
+    }
+    
+    private static void bumpVersion(Map<String, Long> versions, String key) {
+        versions.merge(key, 1L, Long::sum);
+    }
+    
+    // For changes made to cached models without going through the methods above
+    public void invalidateSessionContexts() {
+        sessionEpoch.incrementAndGet();
+    }
+    
     public void removeSession(String sessionId) {
         activeSessions.remove(sessionId);
     }
     
+    /**
+     * Removes every expired session at once by scanning all of them. Idle sessions are
+     * already removed in the background, so this is only needed to force a full sweep.
+     */
     public void cleanExpiredSessions() {
         LocalDateTime now = LocalDateTime.now();
         activeSessions.entrySet().removeIf(entry -> 
             entry.getValue().isExpired(now));
     }
     
+    // Weakly consistent iteration for snapshots: never blocks writers and copies nothing
+    public void forEachUser(Consumer<User> action) {
+        users.values().forEach(action);
+    }
+    
+    public void forEachAccount(Consumer<Account> action) {
+        accounts.values().forEach(action);
+    }
+    
+    public void forEachCard(Consumer<Card> action) {
+        cards.values().forEach(action);
+    }
+    
+    // Visits each account's transactions oldest first
+    public void forEachTransaction(Consumer<Transaction> action) {
+        TransactionLog log = transactionLog;
+        if (log != null) {
+            log.forEachPosition(position -> action.accept(log.view(position)));
+            return;
+        }
+        for (ConcurrentNavigableMap<TransactionKey, Transaction> index : transactionsByAccount.values()) {
+            index.values().forEach(action);
+        }
+    }
+    
     // Clear all data (for testing purposes)
     public void clearAll() {
-        users.clear();
-        accounts.clear();
-        cards.clear();
-        transactions.clear();
-        activeSessions.clear();
+        indexLock.writeLock().lock();
+        try {
+            users.clear();
+            accounts.clear();
+            cards.clear();
+            transactions.clear();
+            accountsByUserId.clear();
+            cardsByUserId.clear();
+            userIdsByEmail.clear();
+            transactionsByAccount.clear();
+            transactionPositions.clear();
+            transactionPositionsByReference.clear();
+            transactionIdsByReference.clear();
+            if (transactionLog != null) {
+                transactionLog.reset();
+            }
+            activeSessions.clear();
+            sessionEpoch.incrementAndGet();
+            journal(Journal.RecordType.CLEAR, null);
+            for (Runnable listener : clearListeners) {
+                listener.run();
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+    
+    // Ordering key for the per-account transaction index; the sequence breaks timestamp ties
+    public static final class TransactionKey implements Comparable<TransactionKey> {
+        private final LocalDateTime timestamp;
+        private final long sequence;
+        
+        public TransactionKey(LocalDateTime timestamp, long sequence) {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+        
+        public LocalDateTime getTimestamp() { return timestamp; }
+        public long getSequence() { return sequence; }
+        
+        // Opaque, URL-safe cursor encoding of this key
+        public String toCursor() {
+            ByteBuffer buffer = ByteBuffer.allocate(20);
+            buffer.putLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+            buffer.putInt(timestamp.getNano());
+            buffer.putLong(sequence);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+        }
+        
+        public static TransactionKey fromCursor(String cursor) {
+            byte[] bytes;
+            try {
+                bytes = Base64.getUrlDecoder().decode(cursor);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid page cursor", e);
+            }
+            if (bytes.length != 20) {
+                throw new IllegalArgumentException("Invalid page cursor");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long epochSecond = buffer.getLong();
+            int nano = buffer.getInt();
+            if (nano < 0 || nano > 999_999_999) {
+                throw new IllegalArgumentException("Invalid page cursor");
+            }
+            return new TransactionKey(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC), buffer.getLong());
+        }
+        
+        @Override
+        public int compareTo(TransactionKey other) {
+            int byTime = timestamp.compareTo(other.timestamp);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TransactionKey)) return false;
+            TransactionKey that = (TransactionKey) o;
+            return sequence == that.sequence && timestamp.equals(that.timestamp);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * timestamp.hashCode() + Long.hashCode(sequence);
+        }
+    }
+    
+    // Read-only list over an in-memory account index; iterate it rather than indexing into it,
+    // since positional access walks the skip list
+    private static final class IndexHistoryView extends AbstractList<Transaction> {
+        private final ConcurrentNavigableMap<TransactionKey, Transaction> index;
+        
+        IndexHistoryView(ConcurrentNavigableMap<TransactionKey, Transaction> index) {
+            this.index = index;
+        }
+        
+        @Override
+        public Iterator<Transaction> iterator() {
+            return Collections.unmodifiableCollection(index.values()).iterator();
+        }
+        
+        @Override
+        public Transaction get(int position) {
+            int i = 0;
+            for (Transaction transaction : index.values()) {
+                if (i++ == position) {
+                    return transaction;
+                }
+            }
+            throw new IndexOutOfBoundsException("Index: " + position);
+        }
+        
+        @Override
+        public int size() {
+            return index.size();
+        }
+    }
+    
+    // One page of a transaction query; nextCursor is null on the last page
+    public static class TransactionPage {
+        private final List<Transaction> transactions;
+        private final String nextCursor;
+        
+        public TransactionPage(List<Transaction> transactions, String nextCursor) {
+            this.transactions = transactions;
+            this.nextCursor = nextCursor;
+        }
+        
+        public List<Transaction> getTransactions() { return transactions; }
+        public String getNextCursor() { return nextCursor; }
+        public boolean hasMore() { return nextCursor != null; }
     }
     
     // Inner class for session management
@@ -148,33 +907,49 @@ public class DataCache {
         private String sessionId;
         private String cardNumber;
         private LocalDateTime loginTime;
-        private LocalDateTime lastActivity;
+        // System.nanoTime of the last activity: monotonic, and updating it allocates nothing.
+        // Read by the expiry wheel when the session's slot fires.
+        private volatile long lastActivityNanos;
+        // Card, account and user resolved by AuthenticationService; valid while their versions are current
+        private volatile AuthenticationService.AuthenticatedUser context;
         private static final int SESSION_TIMEOUT_MINUTES = 5;
+        private static final long SESSION_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(SESSION_TIMEOUT_MINUTES);
         
         public UserSession(String sessionId, String cardNumber, LocalDateTime loginTime) {
             this.sessionId = sessionId;
             this.cardNumber = cardNumber;
             this.loginTime = loginTime;
-            this.lastActivity = loginTime;
+            this.lastActivityNanos = System.nanoTime() - Duration.between(loginTime, LocalDateTime.now()).toNanos();
         }
         
+        // Does not touch the expiry wheel; the session is rescheduled lazily when its old deadline comes up
         public void updateLastActivity() {
-            this.lastActivity = LocalDateTime.now();
+            this.lastActivityNanos = System.nanoTime();
         }
         
         public boolean isExpired(LocalDateTime currentTime) {
-            return lastActivity.plusMinutes(SESSION_TIMEOUT_MINUTES).isBefore(currentTime);
+            long now = System.nanoTime() + Duration.between(LocalDateTime.now(), currentTime).toNanos();
+            return now - getDeadlineNanos() > 0;
         }
         
         public boolean isExpired() {
-            return isExpired(LocalDateTime.now());
+            return System.nanoTime() - getDeadlineNanos() > 0;
+        }
+        
+        long getDeadlineNanos() {
+            return lastActivityNanos + SESSION_TIMEOUT_NANOS;
         }
         
+        public AuthenticationService.AuthenticatedUser getContext() { return context; }
+        public void setContext(AuthenticationService.AuthenticatedUser context) { this.context = context; }
+        
         // Getters
         public String getSessionId() { return sessionId; }
         public String getCardNumber() { return cardNumber; }
         public LocalDateTime getLoginTime() { return loginTime; }
-        public LocalDateTime getLastActivity() { return lastActivity; }
+        public LocalDateTime getLastActivity() {
+            return LocalDateTime.now().minusNanos(System.nanoTime() - lastActivityNanos);
+        }
         public int getSessionTimeoutMinutes() { return SESSION_TIMEOUT_MINUTES; }
     }
 }
\ No newline at end of file
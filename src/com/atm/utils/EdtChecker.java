@@ -0,0 +1,29 @@
+package com.atm.utils;
+
+import javax.swing.*;
+
+/**
+ * Debug check that flags service calls made on the Swing Event Dispatch Thread, where a
+ * slow journal write would freeze the UI. Enabled with -Datm.debug.edt=true; when
+ * disabled the check is a single static field read.
+ */
+public final class EdtChecker {
+    private static final boolean ENABLED = Boolean.getBoolean("atm.debug.edt");
+    
+    private EdtChecker() {
+    }
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    /**
+     * Reports the calling stack if the named operation is running on the EDT
+     */
+    public static void checkNotOnEdt(String operation) {
+        if (ENABLED && SwingUtilities.isEventDispatchThread()) {
+            new IllegalStateException("Service call " + operation + " on the Event Dispatch Thread")
+                .printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.atm.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Time-ordered 64-bit ids in the style of Snowflake.
+ *
+ * Layout, high to low: 41 bits of milliseconds since 2024-01-01 UTC, 10 bits of node id
+ * (-Datm.node.id, see NodeId), 4 bits of stripe and 8 bits of sequence. Each thread draws from the
+ * stripe picked by its thread id, so threads on different stripes never contend. A stripe
+ * that issues all 256 ids of a millisecond moves on to the next millisecond instead of
+ * waiting, and never goes back in time if the clock does.
+ *
+ * The string form is 13 characters of Crockford base32, fixed length, so ids sort
+ * as strings in the same order as numbers.
+ */
+public final class IdGenerator {
+    public static final int STRING_LENGTH = 13;
+    
+    private static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int SEQUENCE_BITS = 8;
+    private static final int STRIPE_BITS = 4;
+    private static final int NODE_BITS = 10;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final char[] CROCKFORD = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    
+    private static final long NODE_ID = NodeId.get(); // NodeId.MAX fits in NODE_BITS
+    
+    // Per stripe: (timestamp << SEQUENCE_BITS) | sequence of the last id issued
+    private static final AtomicLongArray STATES = new AtomicLongArray(STRIPES);
+    
+    private IdGenerator() {
+    }
+    
+    public static long nextId() {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        while (true) {
+            long last = STATES.get(stripe);
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                // Same millisecond or the clock went back: continue the sequence, spilling into the next millisecond
+                next = last + 1;
+            }
+            if (STATES.compareAndSet(stripe, last, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                return timestamp << (NODE_BITS + STRIPE_BITS + SEQUENCE_BITS)
+                    | NODE_ID << (STRIPE_BITS + SEQUENCE_BITS)
+                    | (long) stripe << SEQUENCE_BITS
+                    | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+    
+    public static String nextIdString() {
+        return toString(nextId());
+    }
+    
+    /**
+     * Encodes a non-negative id as 13 Crockford base32 characters
+     */
+    public static String toString(long id) {
+        char[] chars = new char[STRING_LENGTH];
+        for (int i = STRING_LENGTH - 1; i >= 0; i--) {
+            chars[i] = CROCKFORD[(int) (id & 0x1f)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * Decodes the string form; case-insensitive, and accepts O for 0 and I or L for 1
+     * @throws IllegalArgumentException if the string is not a valid id
+     */
+    public static long parse(String text) {
+        if (text == null || text.length() != STRING_LENGTH) {
+            throw new IllegalArgumentException("Invalid id: " + text);
+        }
+        long id = 0;
+        for (int i = 0; i < STRING_LENGTH; i++) {
+            id = id << 5 | decode(text.charAt(i), text);
+        }
+        return id;
+    }
+    
+    // Milliseconds since the Unix epoch at which the id was issued
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + STRIPE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+    
+    private static int decode(char c, String text) {
+        char upper = Character.toUpperCase(c);
+        if (upper == 'O') {
+            return 0;
+        }
+        if (upper == 'I' || upper == 'L') {
+            return 1;
+        }
+        for (int value = 0; value < CROCKFORD.length; value++) {
+            if (CROCKFORD[value] == upper) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid id: " + text);
+    }
+}
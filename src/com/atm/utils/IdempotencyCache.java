@@ -0,0 +1,170 @@
+package com.atm.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, time-expiring memo of results keyed by client idempotency key.
+ *
+ * The first call for a key runs the action; calls with the same key while it runs wait
+ * for that execution, and calls after it finished get the stored result, until the entry
+ * expires. Only finished entries past their time-to-live are ever dropped: a live entry is
+ * what makes a retry safe, so when the cache is full of live entries new keys are refused
+ * rather than making room. Entries share one time-to-live, so insertion order is also
+ * expiry order and a FIFO queue is enough to find expired entries.
+ */
+public class IdempotencyCache<V> {
+    private final Map<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry<V>> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(); // entries in the map, plus slots being claimed
+    private final long ttlNanos;
+    private final int maxEntries;
+    
+    public IdempotencyCache(long ttlMillis, int maxEntries) {
+        if (ttlMillis <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("TTL and capacity must be positive");
+        }
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxEntries = maxEntries;
+    }
+    
+    /**
+     * Runs the action once per live key and returns its result.
+     * If the action throws, the key is forgotten so the client can retry it, and callers
+     * waiting on the same key get the same exception.
+     *
+     * @param fingerprint identifies the request parameters; a replay whose fingerprint differs
+     *                    from the original gets onMismatch instead of the stored result
+     * @param onFull      result for a new key while the cache holds maxEntries live entries;
+     *                    the action is not run
+     */
+    public V execute(String key, String fingerprint, Supplier<V> action, Supplier<V> onMismatch,
+                     Supplier<V> onFull) {
+        long now = System.nanoTime();
+        Entry<V> created = new Entry<>(key, fingerprint, now);
+        while (true) {
+            Entry<V> existing = entries.get(key);
+            if (existing != null) {
+                if (!existing.isExpired(now, ttlNanos)) {
+                    if (!existing.fingerprint.equals(fingerprint)) {
+                        return onMismatch.get();
+                    }
+                    return await(existing);
+                }
+                // Finished and expired but not yet evicted; replace it
+                remove(existing);
+                continue;
+            }
+            if (!claimSlot(now)) {
+                return onFull.get();
+            }
+            if (entries.putIfAbsent(key, created) == null) {
+                break;
+            }
+            size.decrementAndGet(); // lost the race for this key; look at the winner
+        }
+        insertionOrder.add(created);
+        
+        try {
+            V value = action.get();
+            created.result.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            remove(created);
+            created.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+    
+    // Reserves room for one entry, evicting expired ones first if the cache is full
+    private boolean claimSlot(long now) {
+        if (size.incrementAndGet() <= maxEntries) {
+            evictExpired(now);
+            return true;
+        }
+        evictExpired(now);
+        if (size.get() <= maxEntries) {
+            return true;
+        }
+        size.decrementAndGet();
+        return false;
+    }
+    
+    // Drops finished entries past their time-to-live, oldest first. An entry still running
+    // past its time-to-live is kept and re-queued, so it is looked at again once it finishes.
+    private void evictExpired(long now) {
+        Entry<V> oldest = insertionOrder.peek();
+        if (oldest == null || now - oldest.createdAt < ttlNanos) {
+            return;
+        }
+        synchronized (insertionOrder) {
+            List<Entry<V>> running = null;
+            while ((oldest = insertionOrder.peek()) != null && now - oldest.createdAt >= ttlNanos) {
+                insertionOrder.poll();
+                if (oldest.result.isDone()) {
+                    remove(oldest);
+                } else {
+                    if (running == null) {
+                        running = new ArrayList<>();
+                    }
+                    running.add(oldest);
+                }
+            }
+            if (running != null) {
+                insertionOrder.addAll(running);
+            }
+        }
+    }
+    
+    private void remove(Entry<V> entry) {
+        if (entries.remove(entry.key, entry)) {
+            size.decrementAndGet();
+        }
+    }
+    
+    // Waits for the first execution; its exception is rethrown as thrown, not wrapped
+    private static <V> V await(Entry<V> entry) {
+        try {
+            return entry.result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    private static final class Entry<V> {
+        private final String key;
+        private final String fingerprint;
+        private final long createdAt;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        
+        Entry(String key, String fingerprint, long createdAt) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.createdAt = createdAt;
+        }
+        
+        // An execution still running never expires, so its key cannot start a second one
+        boolean isExpired(long now, long ttlNanos) {
+            return result.isDone() && now - createdAt >= ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.atm.utils;
+
+/**
+ * This terminal's node id (-Datm.node.id, default 0), shared by the generators that embed it.
+ * It is parsed and validated once, against the narrowest range any of them can hold: ids
+ * have 10 bits for it, so it must be between 0 and 1023 although references have 4 digits.
+ */
+public final class NodeId {
+    public static final String PROPERTY = "atm.node.id";
+    public static final int MAX = 1023;
+    
+    private static final int VALUE = parse(System.getProperty(PROPERTY));
+    
+    private NodeId() {
+    }
+    
+    public static int get() {
+        return VALUE;
+    }
+    
+    private static int parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        int node;
+        try {
+            node = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(PROPERTY + " must be a number between 0 and " + MAX, e);
+        }
+        if (node < 0 || node > MAX) {
+            throw new IllegalArgumentException(PROPERTY + " must be between 0 and " + MAX);
+        }
+        return node;
+    }
+}
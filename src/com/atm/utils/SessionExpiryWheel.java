@@ -0,0 +1,112 @@
+package com.atm.utils;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel that removes idle sessions from the session map.
+ *
+ * A session is placed in the slot of the tick its deadline falls in. A background ticker
+ * empties one slot per tick and checks each session in it: logged-out sessions are
+ * dropped, idle ones are removed, and ones that saw activity since they were scheduled
+ * are put back in the slot of their new deadline. Activity therefore only updates a
+ * timestamp, and each session costs O(1) work per timeout period instead of every
+ * login scanning all sessions.
+ *
+ * Only the ticker touches the slots. Other threads hand sessions over through a lock-free
+ * inbox that the ticker drains before each advance, so a session can never be added to a
+ * slot the ticker has already emptied.
+ */
+final class SessionExpiryWheel {
+    private final Map<String, DataCache.UserSession> sessions;
+    private final long tickNanos;
+    private final Queue<DataCache.UserSession> inbox = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<DataCache.UserSession>[] slots; // ticker thread only
+    private final int mask;
+    private long processedTick; // ticker thread only
+    private ScheduledExecutorService ticker;
+    
+    SessionExpiryWheel(Map<String, DataCache.UserSession> sessions, long tickMillis, int slotCount) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two");
+        }
+        this.sessions = sessions;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArrayDeque<DataCache.UserSession>[] slots = new ArrayDeque[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.slots = slots;
+        this.mask = slotCount - 1;
+        this.processedTick = Math.floorDiv(System.nanoTime(), tickNanos);
+    }
+    
+    /**
+     * Starts the ticker on first use
+     */
+    synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(() -> {
+            try {
+                advance(System.nanoTime());
+            } catch (RuntimeException e) {
+                System.err.println("Session expiry failed: " + e.getMessage());
+            }
+        }, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Schedules the session at its current deadline; safe from any thread. The ticker files
+     * it into its slot on the next tick.
+     */
+    void schedule(DataCache.UserSession session) {
+        inbox.add(session);
+    }
+    
+    // Processes every tick up to now (System.nanoTime); called by the ticker thread only
+    void advance(long nowNanos) {
+        DataCache.UserSession session;
+        while ((session = inbox.poll()) != null) {
+            place(session);
+        }
+        
+        long target = Math.floorDiv(nowNanos, tickNanos);
+        while (processedTick < target) {
+            long tick = processedTick + 1;
+            ArrayDeque<DataCache.UserSession> due = slots[(int) tick & mask];
+            processedTick = tick;
+            // Sessions put back below land in later ticks, never in this slot's current pass
+            for (int remaining = due.size(); remaining > 0; remaining--) {
+                session = due.poll();
+                if (sessions.get(session.getSessionId()) != session) {
+                    continue; // logged out or replaced
+                }
+                if (nowNanos - session.getDeadlineNanos() > 0) {
+                    sessions.remove(session.getSessionId(), session);
+                } else {
+                    place(session);
+                }
+            }
+        }
+    }
+    
+    // Files the session in the slot of the tick after its deadline. A deadline more than one
+    // rotation away lands in an earlier slot and is simply put back when that slot fires.
+    private void place(DataCache.UserSession session) {
+        long tick = Math.max(Math.floorDiv(session.getDeadlineNanos(), tickNanos) + 1, processedTick + 1);
+        slots[(int) tick & mask].add(session);
+    }
+}
@@ -0,0 +1,178 @@
+package com.atm.models;
+
+import com.atm.services.TransferEngine;
+import com.atm.utils.DataCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test for the lock-free Account balance: many threads hammer the same account(s)
+ * and the test checks that no money is created or lost.
+ *
+ * Run: java -cp build:build-test com.atm.models.AccountStressTest [threads] [operations per thread]
+ * Exits with status 1 if any check fails.
+ */
+public class AccountStressTest {
+    private static final Money INITIAL_BALANCE = Money.ofUnits(10_000);
+    
+    private static int failures;
+    
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        System.out.println("Account stress test: " + threads + " threads x " + operations + " operations");
+        
+        withdrawalsAndDeposits(threads, operations);
+        dailyLimitReservations(threads, operations);
+        transfersBetweenAccounts(threads, operations / 20);
+        
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " check(s)");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+    
+    // Random debits and credits on one account: final balance must equal initial + credited - debited
+    private static void withdrawalsAndDeposits(int threads, int operations) throws InterruptedException {
+        Account account = new Account("STRESS-1", "U", Account.AccountType.CHECKING, INITIAL_BALANCE);
+        AtomicLong debited = new AtomicLong();
+        AtomicLong credited = new AtomicLong();
+        AtomicLong refused = new AtomicLong();
+        AtomicLong lowestBalance = new AtomicLong(Long.MAX_VALUE);
+        
+        long elapsed = runConcurrently(threads, () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long localDebited = 0;
+            long localCredited = 0;
+            long localRefused = 0;
+            long localLowest = Long.MAX_VALUE;
+            for (int i = 0; i < operations; i++) {
+                Money amount = Money.ofCents(1 + random.nextInt(50_000));
+                if (random.nextInt(100) < 55) {
+                    Money after = account.tryWithdraw(amount);
+                    if (after == null) {
+                        localRefused++;
+                    } else {
+                        localDebited += amount.getCents();
+                        localLowest = Math.min(localLowest, after.getCents());
+                    }
+                } else {
+                    account.deposit(amount);
+                    localCredited += amount.getCents();
+                }
+            }
+            debited.addAndGet(localDebited);
+            credited.addAndGet(localCredited);
+            refused.addAndGet(localRefused);
+            lowestBalance.accumulateAndGet(localLowest, Math::min);
+        });
+        
+        long expected = INITIAL_BALANCE.getCents() + credited.get() - debited.get();
+        check("balance equals initial + credits - debits",
+            account.getBalanceMoney().getCents() == expected,
+            "expected " + expected + " cents, found " + account.getBalanceMoney().getCents());
+        check("no debit took the balance below zero", lowestBalance.get() >= 0,
+            "lowest balance after a debit was " + lowestBalance.get());
+        System.out.printf("  withdrawals/deposits: %,d ops in %d ms, %,d refused for funds%n",
+            (long) threads * operations, elapsed, refused.get());
+    }
+    
+    // Concurrent reservations must never take today's total over the limit
+    private static void dailyLimitReservations(int threads, int operations) throws InterruptedException {
+        Account account = new Account("STRESS-2", "U", Account.AccountType.CHECKING, INITIAL_BALANCE);
+        account.setDailyLimitMoney(Money.ofUnits(1_000));
+        long now = System.currentTimeMillis();
+        AtomicLong reserved = new AtomicLong();
+        
+        runConcurrently(threads, () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long localReserved = 0;
+            for (int i = 0; i < operations / 10; i++) {
+                Money amount = Money.ofCents(1 + random.nextInt(5_000));
+                if (account.reserveDailySpend(amount, now)) {
+                    if (random.nextBoolean()) {
+                        account.releaseDailySpend(amount, now); // e.g. the debit was refused
+                    } else {
+                        localReserved += amount.getCents();
+                    }
+                }
+            }
+            reserved.addAndGet(localReserved);
+        });
+        
+        long spent = account.getDailySpent(now).getCents();
+        check("daily spend equals the reservations kept", spent == reserved.get(),
+            "tracker shows " + spent + " cents, threads kept " + reserved.get());
+        check("daily spend within the limit", spent <= account.getDailyLimitMoney().getCents(),
+            "spent " + spent + " cents against a limit of " + account.getDailyLimitMoney().getCents());
+    }
+    
+    // Transfers in both directions between a few accounts: the total across them is conserved
+    private static void transfersBetweenAccounts(int threads, int operations) throws InterruptedException {
+        DataCache cache = DataCache.getInstance();
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Account account = new Account("STRESS-T" + i, "U", Account.AccountType.CHECKING, INITIAL_BALANCE);
+            cache.addAccount(account);
+            accounts.add(account);
+        }
+        TransferEngine engine = TransferEngine.getInstance();
+        
+        long elapsed = runConcurrently(threads, () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < operations; i++) {
+                Account source = accounts.get(random.nextInt(accounts.size()));
+                Account destination = accounts.get(random.nextInt(accounts.size()));
+                if (source != destination) {
+                    engine.transfer(source, destination, Money.ofCents(1 + random.nextInt(200_000)));
+                }
+            }
+        });
+        
+        long total = 0;
+        for (Account account : accounts) {
+            total += account.getBalanceMoney().getCents();
+            check("no negative balance on " + account.getAccountNumber(), account.getBalanceMoney().getCents() >= 0,
+                "balance " + account.getBalanceMoney());
+        }
+        long expected = INITIAL_BALANCE.getCents() * accounts.size();
+        check("transfers conserve the total", total == expected, "expected " + expected + " cents, found " + total);
+        System.out.printf("  transfers: %,d attempts in %d ms%n", (long) threads * operations, elapsed);
+    }
+    
+    // Starts all workers together and returns the elapsed milliseconds once every one has finished
+    private static long runConcurrently(int threads, Runnable work) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                work.run();
+            }, "stress-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (System.nanoTime() - begin) / 1_000_000;
+    }
+    
+    private static void check(String name, boolean passed, String detail) {
+        System.out.println((passed ? "  ok   " : "  FAIL ") + name + (passed ? "" : ": " + detail));
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.atm.services;
+
+import com.atm.models.Account;
+import com.atm.models.Money;
+import com.atm.utils.DataCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares transfer throughput and latency of the single-writer LedgerEngine with the
+ * striped-lock TransferEngine path, on the in-memory cache (no journal attached).
+ *
+ * Run: java -cp build:build-test com.atm.services.LedgerBenchmark [threads] [transfers per thread] [accounts]
+ * Few accounts means heavy contention on the locking path; many accounts means little.
+ */
+public class LedgerBenchmark {
+    private static final Money INITIAL_BALANCE = Money.ofUnits(1_000_000);
+    private static final int ROUNDS = 3; // the first round is warm-up and not reported
+    
+    private interface TransferPath {
+        boolean transfer(Account source, Account destination, Money amount);
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int transfers = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int accountCount = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        System.out.println("Ledger benchmark: " + threads + " threads x " + transfers + " transfers over "
+            + accountCount + " accounts");
+        
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < accountCount; i++) {
+            Account account = new Account("BENCH-" + i, "U", Account.AccountType.CHECKING, INITIAL_BALANCE);
+            DataCache.getInstance().addAccount(account);
+            accounts.add(account);
+        }
+        
+        TransferEngine locking = TransferEngine.getInstance();
+        LedgerEngine ledger = LedgerEngine.getInstance();
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round > 0;
+            run("striped locks ", report, threads, transfers, accounts,
+                (source, destination, amount) -> locking.transfer(source, destination, amount).isSuccess());
+            run("single writer ", report, threads, transfers, accounts,
+                (source, destination, amount) -> ledger.transfer(source, destination, amount).join().isSuccess());
+        }
+        
+        long total = 0;
+        for (Account account : accounts) {
+            total += account.getBalanceMoney().getCents();
+        }
+        if (total != INITIAL_BALANCE.getCents() * accountCount) {
+            System.out.println("FAILED: balances do not add up to the initial total");
+            System.exit(1);
+        }
+    }
+    
+    private static void run(String name, boolean report, int threads, int transfers, List<Account> accounts,
+                            TransferPath path) throws InterruptedException {
+        long[][] latencies = new long[threads][transfers];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            long[] samples = latencies[t];
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < transfers; i++) {
+                    Account source = accounts.get(random.nextInt(accounts.size()));
+                    Account destination = accounts.get(random.nextInt(accounts.size()));
+                    if (source == destination) {
+                        destination = accounts.get((accounts.indexOf(source) + 1) % accounts.size());
+                    }
+                    long begin = System.nanoTime();
+                    path.transfer(source, destination, Money.ofCents(1 + random.nextInt(10_000)));
+                    samples[i] = System.nanoTime() - begin;
+                }
+            }, "bench-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (!report) {
+            return;
+        }
+        
+        long[] all = new long[threads * transfers];
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(latencies[t], 0, all, t * transfers, transfers);
+        }
+        Arrays.sort(all);
+        System.out.printf("  %s %,12.0f transfers/s   p50 %6.1f us   p99 %7.1f us   p99.9 %8.1f us%n",
+            name, all.length / (elapsed / 1e9), micros(all, 0.50), micros(all, 0.99), micros(all, 0.999));
+    }
+    
+    private static double micros(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, sorted.length * percentile)] / 1_000.0;
+    }
+}
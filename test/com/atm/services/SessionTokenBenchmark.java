@@ -0,0 +1,100 @@
+package com.atm.services;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+/**
+ * Measures session token issuance rate of SessionTokenGenerator against a random UUID and a
+ * single shared SecureRandom, from one thread and from many, and checks a sample of tokens
+ * for length and duplicates.
+ *
+ * Run: java -cp build:build-test com.atm.services.SessionTokenBenchmark [threads] [tokens per thread]
+ */
+public class SessionTokenBenchmark {
+    private static final int ROUNDS = 3; // the first round is warm-up and not reported
+    private static final int SAMPLE = 1_000_000;
+    
+    private static final SecureRandom SHARED_RANDOM = new SecureRandom();
+    
+    // Keeps the JIT from dropping token creation whose result is never used
+    private static volatile int sink;
+    
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int tokens = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+        System.out.println("Session token benchmark: " + tokens + " tokens per thread");
+        
+        if (!checkSample()) {
+            System.exit(1);
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round > 0;
+            for (int threadCount : new int[] {1, threads}) {
+                run("generator     ", report, threadCount, tokens, SessionTokenGenerator::nextToken);
+                run("random UUID   ", report, threadCount, tokens, () -> UUID.randomUUID().toString());
+                run("shared random ", report, threadCount, tokens, SessionTokenBenchmark::sharedRandomToken);
+            }
+        }
+    }
+    
+    private static boolean checkSample() {
+        Set<String> seen = new HashSet<>(SAMPLE * 2);
+        for (int i = 0; i < SAMPLE; i++) {
+            String token = SessionTokenGenerator.nextToken();
+            if (token.length() != SessionTokenGenerator.TOKEN_LENGTH || !seen.add(token)) {
+                System.out.println("FAILED: bad or duplicate token " + token);
+                return false;
+            }
+        }
+        System.out.printf("  ok   %,d tokens, all %d characters and distinct%n",
+            SAMPLE, SessionTokenGenerator.TOKEN_LENGTH);
+        return true;
+    }
+    
+    // What a straightforward implementation would do: one generator shared by every thread
+    private static String sharedRandomToken() {
+        byte[] bytes = new byte[16];
+        SHARED_RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+    
+    private static void run(String name, boolean report, int threads, int tokens, Supplier<String> issuer)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int hash = 0;
+                for (int i = 0; i < tokens; i++) {
+                    hash += issuer.get().hashCode();
+                }
+                sink += hash;
+            }, "tokens-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (report) {
+            System.out.printf("  %s %3d thread(s) %,14.0f tokens/s%n", name, threads,
+                (double) threads * tokens / (elapsed / 1e9));
+        }
+    }
+}